@@ -0,0 +1,83 @@
+package reversi.bench;
+
+import reversi.ReversiException;
+import reversi.archive.GameArchive;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures how fast {@link GameArchive} reads game logs.  The archive is
+ * scanned twice: once reading only each game's moves, which shows whether
+ * the scan keeps up with the disk, and once replaying every game onto a
+ * board.  The games and bytes per second of each pass are printed.  For
+ * the first pass to measure the disk rather than the page cache, the logs
+ * must not have been read recently.<P>
+ *
+ * Usage: java reversi.bench.ArchiveScan game_log...
+ */
+public class ArchiveScan {
+    /**
+     * Runs the scans.
+     *
+     * @param args the game logs
+     * @throws IOException if a log's size cannot be read
+     * @throws ReversiException if a log cannot be opened
+     */
+    public static void main(String[] args) throws IOException, ReversiException {
+        if (args.length == 0) {
+            System.out.println("Usage: java ArchiveScan game_log...");
+            System.exit(1);
+        }
+        Path[] paths = new Path[args.length];
+        long bytes = 0;
+        for (int i=0; i<args.length; ++i) {
+            paths[i] = Paths.get(args[i]);
+            bytes += Files.size(paths[i]);
+        }
+
+        try (GameArchive archive = new GameArchive(paths)) {
+            long start = System.nanoTime();
+            long[] moves = new long[1];
+            archive.forEach(game -> {
+                int count = game.getMoveCount();
+                for (int i=0; i<count; ++i) {
+                    moves[0] += game.getMove(i);
+                }
+            });
+            report("scan", archive.size(), bytes, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            long[] failed = new long[1];
+            archive.forEach(game -> {
+                try {
+                    moves[0] += game.replay().getHash();
+                } catch (ReversiException e) {
+                    ++failed[0];
+                }
+            });
+            report("replay", archive.size(), bytes, System.nanoTime() - start);
+            if (failed[0] > 0) {
+                System.out.println(failed[0] + " games held an invalid move");
+            }
+            // keep the work from being optimized away
+            System.out.println("(checksum " + moves[0] + ")");
+        }
+    }
+
+    /**
+     * Print the rate of a pass.
+     *
+     * @param pass the name of the pass
+     * @param games how many games were read
+     * @param bytes how many bytes the logs hold
+     * @param nanos how long the pass took
+     */
+    private static void report(String pass, long games, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%-6s %d games in %.3f s: %.0f games/s, %.1f MB/s%n",
+                pass, games, seconds, games / seconds, bytes / seconds / 1e6);
+    }
+}
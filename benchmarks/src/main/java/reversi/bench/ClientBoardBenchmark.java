@@ -0,0 +1,81 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reversi.ReversiException;
+import reversi2.Board;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a client's {@link Board} applying the moves of a whole 8x8 game,
+ * as it does when the server reports them: by working out the flips
+ * itself with {@link Board#moveMade}, and by applying the flips the
+ * server sent with {@link Board#deltaMade}.  The time is per move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientBoardBenchmark {
+    /** the moves in a game on a full 8x8 board */
+    private static final int MOVES = 60;
+
+    /** the game */
+    private RecordedGame game = new RecordedGame(8, 8, 20);
+    /** the board, set up afresh for each game */
+    private Board board = new Board();
+
+    /**
+     * Size the board.
+     *
+     * @throws ReversiException never
+     */
+    @Setup
+    public void setup() throws ReversiException {
+        this.board.allocate(this.game.rows, this.game.cols);
+    }
+
+    /**
+     * Play the game by moves alone.
+     *
+     * @return the hash of the final position
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public long moveMade() {
+        this.board.initializeGame();
+        for (int square : this.game.moves) {
+            this.board.moveMade(square / this.game.cols, square % this.game.cols);
+        }
+        return this.board.getHash();
+    }
+
+    /**
+     * Play the game by moves and their flips.
+     *
+     * @return the hash of the final position
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public long deltaMade() {
+        this.board.initializeGame();
+        for (int i=0; i<this.game.moves.length; ++i) {
+            int square = this.game.moves[i];
+            this.board.deltaMade(square / this.game.cols, square % this.game.cols,
+                    this.game.flips[i], this.game.flipCounts[i]);
+        }
+        return this.board.getHash();
+    }
+}
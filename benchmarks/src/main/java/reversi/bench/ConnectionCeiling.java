@@ -0,0 +1,140 @@
+package reversi.bench;
+
+import reversi.ReversiException;
+import reversi.ReversiProtocol;
+import reversi.server.ReversiServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how many idle games a {@link ReversiServer} can hold in one JVM
+ * when each game runs on a platform thread, and when each runs on a
+ * virtual thread.<P>
+ *
+ * The server is started in this JVM in multi-game mode.  Pairs of clients
+ * then connect and never answer {@link ReversiProtocol#MAKE_MOVE}, so every
+ * game sits blocked waiting for a human to think, which is what most games
+ * on a busy server are doing.  Pairs keep being added until the server
+ * stops starting games (or the target is reached), and the number of
+ * games, live threads and heap in use are printed along the way.<P>
+ *
+ * Both ends of every connection are in this JVM, so the open file limit
+ * (<tt>ulimit -n</tt>) must allow four descriptors per game.
+ *
+ * Usage: java reversi.bench.ConnectionCeiling platform|virtual port #_games
+ */
+public class ConnectionCeiling {
+    /** how long to wait for a new game to start before giving up */
+    private static final int START_TIMEOUT_MILLIS = 5000;
+    /** how often to print progress, in games */
+    private static final int REPORT_EVERY = 1000;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the thread mode, the port to use and the number of games
+     *             to try for
+     * @throws ReversiException if the server cannot be started
+     * @throws InterruptedException if interrupted while shutting down
+     */
+    public static void main(String[] args) throws ReversiException, InterruptedException {
+        if (args.length != 3) {
+            System.out.println("Usage: java ConnectionCeiling platform|virtual port #_games");
+            System.exit(1);
+        }
+        boolean virtual = args[0].equals("virtual");
+        int port = Integer.parseInt(args[1]);
+        int target = Integer.parseInt(args[2]);
+
+        ReversiServer server = new ReversiServer(port);
+        ExecutorService games = virtual ?
+                ReversiServer.newVirtualThreadExecutor() :
+                Executors.newCachedThreadPool();
+        Thread acceptor = new Thread(() -> server.runMultiGame(8, 8, games));
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        List<Socket> clients = new ArrayList<>();
+        int held = 0;
+        long start = System.nanoTime();
+        try {
+            while (held < target) {
+                Socket one = new Socket("localhost", port);
+                clients.add(one);
+                Socket two = new Socket("localhost", port);
+                clients.add(two);
+                if (!gameStarted(one)) {
+                    System.out.println("Server stopped starting games.");
+                    break;
+                }
+                ++held;
+                if (held % REPORT_EVERY == 0) {
+                    report(args[0], held);
+                }
+            }
+        } catch (IOException | OutOfMemoryError e) {
+            System.out.println("Gave out: " + e);
+        }
+
+        report(args[0], held);
+        System.out.printf("%s: %d games in %.1f s%n", args[0], held,
+                (System.nanoTime() - start) / 1e9);
+
+        for (Socket client : clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // squash
+            }
+        }
+        server.close();
+    }
+
+    /**
+     * Waits for player one of a new game to be asked for its move.
+     *
+     * @param playerOne player one's connection
+     * @return whether the game started in time
+     * @throws IOException if the connection fails
+     */
+    private static boolean gameStarted(Socket playerOne) throws IOException {
+        playerOne.setSoTimeout(START_TIMEOUT_MILLIS);
+        // this reader is dropped afterwards; nothing more is read
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(playerOne.getInputStream()));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(ReversiProtocol.MAKE_MOVE)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (SocketTimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints the games held so far along with thread and heap use.
+     *
+     * @param mode the thread mode being measured
+     * @param held the number of games being held
+     */
+    private static void report(String mode, int held) {
+        Runtime runtime = Runtime.getRuntime();
+        long heapMb = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        System.out.printf("%s: %d games, %d live platform threads, %d MB heap%n",
+                mode, held, threads, heapMb);
+    }
+}
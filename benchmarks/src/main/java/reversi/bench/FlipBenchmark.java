@@ -0,0 +1,84 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the flip kernels of the layouts that fit any board size, by
+ * playing a whole game of random moves with {@link Reversi#makeMove} and
+ * taking every move back again.  {@link Reversi.Layout#ARRAY} checks the
+ * row and column against the edges at every step of every walk,
+ * {@link Reversi.Layout#RAYS} looks up how far each walk may go in a
+ * {@link reversi.Rays} table, and {@link Reversi.Layout#BITSET} pads the
+ * board so that walks stop at the edge on their own.  The boards are
+ * square and not, since a kernel that mixes up rows and columns only goes
+ * wrong on the latter.  The time is per game, made and unmade.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlipBenchmark {
+    /** picks the moves of the game */
+    private static final long SEED = 20;
+
+    /** how the board stores its squares */
+    @Param({"ARRAY", "RAYS", "BITSET"})
+    public Reversi.Layout layout;
+
+    /** the board size, as rows x columns */
+    @Param({"8x8", "6x12", "20x20"})
+    public String size;
+
+    /** the game */
+    private RecordedGame recorded;
+    /** the board, back at the start of the game after every call */
+    private Reversi game;
+
+    /**
+     * Record the game and set up the board.
+     *
+     * @throws ReversiException never
+     */
+    @Setup
+    public void setup() throws ReversiException {
+        String[] dims = this.size.split("x");
+        this.recorded = new RecordedGame(Integer.parseInt(dims[0]),
+                Integer.parseInt(dims[1]), SEED);
+        this.game = this.recorded.play(0, this.layout);
+    }
+
+    /**
+     * Play the game and take it all back.
+     *
+     * @return the hash of the final position
+     * @throws ReversiException never
+     */
+    @Benchmark
+    public long game() throws ReversiException {
+        int cols = this.recorded.cols;
+        for (int square : this.recorded.moves) {
+            this.game.makeMove(square / cols, square % cols);
+        }
+        long hash = this.game.getHash();
+        for (int i=0; i<this.recorded.moves.length; ++i) {
+            this.game.unmakeMove();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,137 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reversi.ProtocolReader;
+import reversi.Reversi;
+import reversi.ReversiException;
+import reversi.ReversiProtocol;
+import reversi.server.ReversiServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times whole games played through a {@link ReversiServer} over loopback,
+ * from both players connecting to both hearing the result.  The server
+ * runs in multi-game mode in the same JVM, speaking the text protocol;
+ * both players are driven from the benchmark thread, each taking the
+ * first legal move.  Most of the time goes on the 60 round trips of an
+ * 8x8 game, each a move sent and two moves made received.<P>
+ *
+ * The server's messages about each game are thrown away while the
+ * benchmark runs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoopbackBenchmark implements ReversiProtocol {
+    /** the server */
+    private ReversiServer server;
+    /** runs the server */
+    private Thread serverThread;
+    /** where the server's messages went before the benchmark */
+    private PrintStream console;
+
+    /**
+     * Start the server on a port the system chooses.
+     *
+     * @throws ReversiException if the server cannot start
+     */
+    @Setup
+    public void setup() throws ReversiException {
+        this.console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        this.server = new ReversiServer(0);
+        this.serverThread = new Thread(() -> this.server.runMultiGame(Reversi.DIM, Reversi.DIM));
+        this.serverThread.start();
+    }
+
+    /**
+     * Stop the server.
+     *
+     * @throws InterruptedException if interrupted while it stops
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.server.close();
+        this.serverThread.join();
+        System.setOut(this.console);
+    }
+
+    /**
+     * Play a game.
+     *
+     * @return the hash of the final position
+     * @throws IOException if a connection fails
+     * @throws ReversiException if the server does not follow the protocol
+     */
+    @Benchmark
+    public long game() throws IOException, ReversiException {
+        InetAddress host = InetAddress.getLoopbackAddress();
+        try (Socket one = new Socket(host, this.server.getPort());
+             Socket two = new Socket(host, this.server.getPort())) {
+            one.setTcpNoDelay(true);
+            two.setTcpNoDelay(true);
+            ProtocolReader[] in = {
+                    new ProtocolReader(one.getInputStream()),
+                    new ProtocolReader(two.getInputStream())
+            };
+            OutputStream[] out = {one.getOutputStream(), two.getOutputStream()};
+            expect(in[0], CONNECT);
+            expect(in[1], CONNECT);
+
+            Reversi game = new Reversi();
+            int[] moves = new int[Reversi.DIM * Reversi.DIM];
+            for (int ply = 0; !game.gameOver(); ++ply) {
+                int mover = ply % 2;
+                expect(in[mover], MAKE_MOVE);
+                game.legalMoves(moves);
+                int row = moves[0] / Reversi.DIM;
+                int col = moves[0] % Reversi.DIM;
+                out[mover].write((MOVE + " " + row + " " + col + "\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out[mover].flush();
+                expect(in[0], MOVE_MADE);
+                expect(in[1], MOVE_MADE);
+                game.makeMove(row, col);
+            }
+            in[0].next();
+            in[1].next();
+            return game.getHash();
+        }
+    }
+
+    /**
+     * Read a message and check it is the one expected.
+     *
+     * @param in where the message comes from
+     * @param command the message expected
+     * @throws IOException if the connection fails
+     * @throws ReversiException if another message came
+     */
+    private static void expect(ProtocolReader in, String command)
+            throws IOException, ReversiException {
+        String got = in.next();
+        if (got != command) {
+            throw new ReversiException("Expected " + command + " but got " + got);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package reversi.bench;
+
+import reversi.server.Matchmaker;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator for {@link Matchmaker}.  Synthetic players join at a fixed
+ * rate from several threads, with ratings spread normally around 1500 and
+ * most of them wanting the standard 8x8 board.  The time from joining to
+ * being matched is recorded for every player, and the percentiles are
+ * printed at the end along with the join rate actually reached.<P>
+ *
+ * Usage: java reversi.bench.MatchmakingLoad #_players joins_per_second #_threads
+ */
+public class MatchmakingLoad {
+    /** mean of the synthetic ratings */
+    private static final double MEAN_RATING = 1500;
+    /** standard deviation of the synthetic ratings */
+    private static final double RATING_SD = 300;
+    /** rating points in each matchmaking band */
+    private static final int RATING_BAND = 50;
+    /** how long a player waits before matchmaking looks at wider ratings */
+    private static final long TARGET_MILLIS = 2000;
+    /** board sizes asked for, 8x8 most often */
+    private static final int[][] SIZES = {{8, 8}, {8, 8}, {8, 8}, {16, 16}, {20, 12}};
+
+    /**
+     * Runs the load.
+     *
+     * @param args the number of players, the join rate and the number of
+     *             joining threads
+     * @throws InterruptedException if interrupted while waiting for matches
+     */
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length != 3) {
+            System.out.println("Usage: java MatchmakingLoad #_players joins_per_second #_threads");
+            System.exit(1);
+        }
+        int players = Integer.parseInt(args[0]);
+        int rate = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+
+        // each player is just its index; the waits are recorded by index
+        long[] joined = new long[players];
+        long[] waited = new long[players];
+        AtomicInteger matched = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        Matchmaker.Listener<Integer> listener = (one, two, rows, cols) -> {
+            long now = System.nanoTime();
+            waited[one] = now - joined[one];
+            waited[two] = now - joined[two];
+            if (matched.addAndGet(2) >= players - 1) {
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        try (Matchmaker<Integer> matchmaker =
+                     new Matchmaker<>(RATING_BAND, TARGET_MILLIS, listener)) {
+            Thread[] joiners = new Thread[threads];
+            for (int t=0; t<threads; ++t) {
+                int first = t;
+                joiners[t] = new Thread(() -> {
+                    Random random = new Random(first);
+                    long interval = TimeUnit.SECONDS.toNanos(1) * threads / rate;
+                    for (int p=first; p<players; p+=threads) {
+                        // keep to the schedule rather than sleeping a fixed time
+                        long due = start + interval * (p / threads);
+                        while (System.nanoTime() < due) {
+                            Thread.onSpinWait();
+                        }
+                        int rating = (int) (MEAN_RATING + RATING_SD * random.nextGaussian());
+                        int[] size = SIZES[random.nextInt(SIZES.length)];
+                        joined[p] = System.nanoTime();
+                        matchmaker.join(p, rating, size[0], size[1]);
+                    }
+                });
+                joiners[t].start();
+            }
+            for (Thread joiner : joiners) {
+                joiner.join();
+            }
+            double joinSeconds = (System.nanoTime() - start) / 1e9;
+            done.await(TARGET_MILLIS * 20, TimeUnit.MILLISECONDS);
+
+            System.out.printf("%d players joined in %.2f s (%.0f joins/s), %d matched%n",
+                    players, joinSeconds, players / joinSeconds, matched.get());
+        }
+
+        long[] sorted = Arrays.stream(waited).filter(w -> w > 0).sorted().toArray();
+        if (sorted.length == 0) {
+            return;
+        }
+        for (double p : new double[] {50, 90, 99, 99.9, 100}) {
+            int i = Math.min(sorted.length - 1, (int) Math.ceil(p / 100 * sorted.length) - 1);
+            System.out.printf("p%-5s %8.1f ms%n", p == 100 ? "max" : String.valueOf(p),
+                    sorted[Math.max(0, i)] / 1e6);
+        }
+    }
+}
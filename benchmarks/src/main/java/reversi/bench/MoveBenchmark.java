@@ -0,0 +1,85 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times {@link Reversi#makeMove} on each board layout, from a position
+ * near the start of a game, one in the middle and one near the end, when
+ * far more discs are flipped.  Each call makes one of the position's
+ * legal moves, in turn, and takes it back with {@link Reversi#unmakeMove()}
+ * so that the position is the same every time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MoveBenchmark {
+    /** picks the moves of the game the positions come from */
+    private static final long SEED = 20;
+
+    /** how the board stores its squares */
+    @Param({"ARRAY", "BITBOARD", "BITSET", "RAYS"})
+    public Reversi.Layout layout;
+
+    /** how far into the game the position is */
+    @Param({"opening", "midgame", "endgame"})
+    public String position;
+
+    /** the position */
+    private Reversi game;
+    /** the legal moves of the position */
+    private int[] moves = new int[Reversi.DIM * Reversi.DIM];
+    /** how many legal moves there are */
+    private int count;
+    /** the next move to make */
+    private int next;
+
+    /**
+     * Play into the position.
+     *
+     * @throws ReversiException never
+     */
+    @Setup
+    public void setup() throws ReversiException {
+        int plies;
+        switch (this.position) {
+            case "opening": plies = 0; break;
+            case "midgame": plies = 30; break;
+            default: plies = 56;
+        }
+        this.game = new RecordedGame(Reversi.DIM, Reversi.DIM, SEED).play(plies, this.layout);
+        this.count = this.game.legalMoves(this.moves);
+    }
+
+    /**
+     * Make a move and take it back.
+     *
+     * @return the hash of the position after the move
+     * @throws ReversiException never
+     */
+    @Benchmark
+    public long makeMove() throws ReversiException {
+        int square = this.moves[this.next];
+        this.next = this.next + 1 == this.count ? 0 : this.next + 1;
+        this.game.makeMove(square / Reversi.DIM, square % Reversi.DIM);
+        long hash = this.game.getHash();
+        this.game.unmakeMove();
+        return hash;
+    }
+}
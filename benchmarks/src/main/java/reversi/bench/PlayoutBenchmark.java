@@ -0,0 +1,72 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How many random games can be played to the end each second, as a bot
+ * sampling games would play them: {@link Reversi#legalMoves}, a random
+ * choice and {@link Reversi#makeMove} until the board is full, and then
+ * every move taken back.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlayoutBenchmark {
+    /** how the board stores its squares */
+    @Param({"ARRAY", "BITBOARD", "BITSET", "RAYS"})
+    public Reversi.Layout layout;
+
+    /** the board, empty between playouts */
+    private Reversi game;
+    /** the legal moves of the position */
+    private int[] moves = new int[Reversi.DIM * Reversi.DIM];
+    /** picks the moves */
+    private SplittableRandom random = new SplittableRandom(17);
+
+    /**
+     * Set up the board.
+     */
+    @Setup
+    public void setup() {
+        this.game = new Reversi(Reversi.DIM, Reversi.DIM, this.layout);
+    }
+
+    /**
+     * Play a random game and take it back.
+     *
+     * @return player one's final score
+     * @throws ReversiException never
+     */
+    @Benchmark
+    public int playout() throws ReversiException {
+        int plies = 0;
+        while (!this.game.gameOver()) {
+            int square = this.moves[this.random.nextInt(this.game.legalMoves(this.moves))];
+            this.game.makeMove(square / Reversi.DIM, square % Reversi.DIM);
+            ++plies;
+        }
+        int score = this.game.getScore(Reversi.Move.PLAYER_ONE);
+        for (int i=0; i<plies; ++i) {
+            this.game.unmakeMove();
+        }
+        return score;
+    }
+}
@@ -0,0 +1,169 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reversi.BinaryDecoder;
+import reversi.BinaryEncoder;
+import reversi.BinaryProtocol;
+import reversi.ReversiProtocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times encoding and decoding the messages a player is sent over a whole
+ * 8x8 game: a move request and a move made for every move, and the
+ * result.  The game is encoded as text lines, as binary frames and as
+ * binary frames with {@link BinaryProtocol#OP_BOARD_DELTA board deltas};
+ * both kinds of binary frame are decoded.  Decoding text is in
+ * {@link ProtocolReaderBenchmark}.  Nothing is allocated once the streams
+ * have grown to hold a game.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolCodecBenchmark implements ReversiProtocol {
+    /** the game */
+    private RecordedGame game = new RecordedGame(8, 8, 20);
+
+    /** where encoded games go; emptied for each game */
+    private ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+    /** writes text to {@link #encoded} */
+    private PrintStream text = new PrintStream(this.encoded);
+    /** writes frames to {@link #encoded} */
+    private BinaryEncoder encoder = new BinaryEncoder(this.encoded);
+
+    /** the game as frames, rewound for each game */
+    private ByteArrayInputStream frames;
+    /** reads {@link #frames} */
+    private BinaryDecoder frameDecoder;
+    /** the game as frames with deltas, rewound for each game */
+    private ByteArrayInputStream deltas;
+    /** reads {@link #deltas} */
+    private BinaryDecoder deltaDecoder;
+    /** the flips of a delta */
+    private int[] flipped = new int[64];
+
+    /**
+     * Encode the game for the decoders.
+     *
+     * @throws IOException never
+     */
+    @Setup
+    public void setup() throws IOException {
+        encodeFrames();
+        this.frames = new ByteArrayInputStream(this.encoded.toByteArray());
+        this.frameDecoder = new BinaryDecoder(this.frames);
+        encodeDeltas();
+        this.deltas = new ByteArrayInputStream(this.encoded.toByteArray());
+        this.deltaDecoder = new BinaryDecoder(this.deltas);
+    }
+
+    /**
+     * Encode the game as text.
+     *
+     * @return the bytes encoded
+     */
+    @Benchmark
+    public int encodeText() {
+        this.encoded.reset();
+        for (int square : this.game.moves) {
+            this.text.println(MAKE_MOVE);
+            this.text.println(MOVE_MADE + " " + square / this.game.cols + " " +
+                    square % this.game.cols);
+        }
+        this.text.println(GAME_WON);
+        this.text.flush();
+        return this.encoded.size();
+    }
+
+    /**
+     * Encode the game as frames.
+     *
+     * @return the bytes encoded
+     * @throws IOException never
+     */
+    @Benchmark
+    public int encodeFrames() throws IOException {
+        this.encoded.reset();
+        for (int square : this.game.moves) {
+            this.encoder.makeMove();
+            this.encoder.moveMade(square / this.game.cols, square % this.game.cols);
+        }
+        this.encoder.gameWon();
+        this.encoder.flush();
+        return this.encoded.size();
+    }
+
+    /**
+     * Encode the game as frames, with deltas in place of moves made.
+     *
+     * @return the bytes encoded
+     * @throws IOException never
+     */
+    @Benchmark
+    public int encodeDeltas() throws IOException {
+        this.encoded.reset();
+        for (int i=0; i<this.game.moves.length; ++i) {
+            int square = this.game.moves[i];
+            this.encoder.makeMove();
+            this.encoder.boardDelta(square / this.game.cols, square % this.game.cols,
+                    this.game.flips[i], this.game.flipCounts[i]);
+        }
+        this.encoder.gameWon();
+        this.encoder.flush();
+        return this.encoded.size();
+    }
+
+    /**
+     * Decode the game's frames.
+     *
+     * @param bh takes the results
+     * @throws IOException never
+     */
+    @Benchmark
+    public void decodeFrames(Blackhole bh) throws IOException {
+        this.frames.reset();
+        int op;
+        while ((op = this.frameDecoder.next()) != BinaryProtocol.OP_GAME_WON) {
+            if (op == BinaryProtocol.OP_MOVE_MADE) {
+                bh.consume(this.frameDecoder.row());
+                bh.consume(this.frameDecoder.col());
+            }
+        }
+    }
+
+    /**
+     * Decode the game's frames with deltas, and the flips in each.
+     *
+     * @param bh takes the results
+     * @throws IOException never
+     */
+    @Benchmark
+    public void decodeDeltas(Blackhole bh) throws IOException {
+        this.deltas.reset();
+        int op;
+        while ((op = this.deltaDecoder.next()) != BinaryProtocol.OP_GAME_WON) {
+            if (op == BinaryProtocol.OP_BOARD_DELTA) {
+                bh.consume(this.deltaDecoder.row());
+                bh.consume(this.deltaDecoder.col());
+                bh.consume(this.deltaDecoder.flipped(this.flipped));
+            }
+        }
+    }
+}
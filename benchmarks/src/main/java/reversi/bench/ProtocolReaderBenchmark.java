@@ -0,0 +1,128 @@
+package reversi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reversi.ProtocolReader;
+import reversi.ReversiProtocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ProtocolReader} with the {@link Scanner} code it
+ * replaced, reading the messages a client sees over a whole 8x8 game:
+ * the {@link ReversiProtocol#CONNECT}, a move request and a move made for
+ * every square, and the result.  Run it with <tt>-prof gc</tt> to see the
+ * allocation per game as well as the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolReaderBenchmark implements ReversiProtocol {
+    /** the bytes of one game's messages */
+    private byte[] game;
+
+    /** a stream over {@link #game} that is rewound for each game */
+    private ByteArrayInputStream rewound;
+
+    /** a reader kept from one game to the next */
+    private ProtocolReader reused;
+
+    /**
+     * Build the game's messages.
+     */
+    @Setup
+    public void setup() {
+        StringBuilder text = new StringBuilder(CONNECT + " 8 8\n");
+        for (int square = 0; square < 60; ++square) {
+            text.append(MAKE_MOVE).append('\n');
+            text.append(MOVE_MADE).append(' ').append(square / 8)
+                    .append(' ').append(square % 8).append('\n');
+        }
+        text.append(GAME_WON).append('\n');
+        this.game = text.toString().getBytes(StandardCharsets.US_ASCII);
+        this.rewound = new ByteArrayInputStream(this.game);
+        this.reused = new ProtocolReader(this.rewound);
+    }
+
+    /**
+     * Read the game the way the client used to: {@link Scanner#next()}
+     * for the command, {@link Scanner#nextLine()} for the arguments, and
+     * a split and parse for each move.
+     *
+     * @param bh takes the results
+     */
+    @Benchmark
+    public void scanner(Blackhole bh) {
+        Scanner in = new Scanner(new ByteArrayInputStream(this.game));
+        while (in.hasNext()) {
+            String request = in.next();
+            String arguments = in.nextLine().trim();
+            bh.consume(request);
+            if (request.equals(MOVE_MADE)) {
+                String[] fields = arguments.split(" ");
+                bh.consume(Integer.parseInt(fields[0]));
+                bh.consume(Integer.parseInt(fields[1]));
+            }
+        }
+    }
+
+    /**
+     * Read the game with a new {@link ProtocolReader}.
+     *
+     * @param bh takes the results
+     * @throws IOException never
+     */
+    @Benchmark
+    public void reader(Blackhole bh) throws IOException {
+        read(new ProtocolReader(new ByteArrayInputStream(this.game)), bh);
+    }
+
+    /**
+     * Read the game with a {@link ProtocolReader} that has already read
+     * other games, as it would over a long connection.  This should not
+     * allocate at all.
+     *
+     * @param bh takes the results
+     * @throws IOException never
+     */
+    @Benchmark
+    public void readerReused(Blackhole bh) throws IOException {
+        this.rewound.reset();
+        read(this.reused, bh);
+    }
+
+    /**
+     * Read every message.
+     *
+     * @param in the reader
+     * @param bh takes the results
+     * @throws IOException never
+     */
+    private static void read(ProtocolReader in, Blackhole bh)
+            throws IOException {
+        String request;
+        while ((request = in.next()) != null) {
+            bh.consume(request);
+            if (request == MOVE_MADE) {
+                bh.consume(in.arg(0));
+                bh.consume(in.arg(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package reversi.bench;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * A whole game of random moves, with the discs each move flipped, for the
+ * benchmarks to replay.  The same seed always gives the same game.
+ */
+class RecordedGame {
+    /** number of rows in board */
+    final int rows;
+    /** number of columns in board */
+    final int cols;
+    /** the moves, packed as <tt>row*cols+col</tt> */
+    final int[] moves;
+    /** the squares each move flipped */
+    final int[][] flips;
+    /** how many squares each move flipped */
+    final int[] flipCounts;
+
+    /**
+     * Play a game of random moves.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param seed picks the moves
+     */
+    RecordedGame(int rows, int cols, long seed) {
+        this.rows = rows;
+        this.cols = cols;
+        Reversi game = new Reversi(rows, cols, Reversi.Layout.ARRAY);
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] legal = new int[rows * cols];
+        int[] moves = new int[rows * cols];
+        int[][] flips = new int[rows * cols][];
+        int[] flipCounts = new int[rows * cols];
+        int count = 0;
+        try {
+            while (!game.gameOver()) {
+                int square = legal[random.nextInt(game.legalMoves(legal))];
+                game.makeMove(square / cols, square % cols);
+                moves[count] = square;
+                flips[count] = new int[rows * cols];
+                flipCounts[count] = game.lastFlips(flips[count]);
+                ++count;
+            }
+        } catch (ReversiException e) {
+            throw new IllegalStateException("A legal move was refused", e);
+        }
+        this.moves = Arrays.copyOf(moves, count);
+        this.flips = Arrays.copyOf(flips, count);
+        this.flipCounts = Arrays.copyOf(flipCounts, count);
+    }
+
+    /**
+     * Play the first moves of the game on a new board.
+     *
+     * @param plies how many moves to play
+     * @param layout how the board stores its squares
+     * @return the board
+     * @throws ReversiException never, since the moves were legal when
+     * recorded
+     */
+    Reversi play(int plies, Reversi.Layout layout) throws ReversiException {
+        Reversi game = new Reversi(this.rows, this.cols, layout);
+        for (int i=0; i<plies; ++i) {
+            game.makeMove(this.moves[i] / this.cols, this.moves[i] % this.cols);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,172 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * A {@link BoardEngine} that keeps a {@link Move} for every square in a
+ * matrix.  It works for any board size.
+ */
+class ArrayBoard implements BoardEngine {
+    /** number of rows in board */
+    private int rows;
+    /** number of columns in board */
+    private int cols;
+    /** the board */
+    private Move[][] board;
+
+    /**
+     * Construct an empty board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    ArrayBoard(int rows, int cols) {
+        // initialize all spots on the board to empty
+        this.board = new Move[rows][cols];
+        for (int row=0; row<rows; ++row) {
+            for (int col=0; col<cols; ++col) {
+                this.board[row][col] = Move.NONE;
+            }
+        }
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    @Override
+    public Move get(int row, int col) {
+        return this.board[row][col];
+    }
+
+    @Override
+    public void set(int row, int col, Move move) {
+        this.board[row][col] = move;
+    }
+
+    @Override
+    public boolean occupiedNeighbor(int row, int col) {
+        // scan through all neighbors and see if there is at least one that is occupied
+        for (int r=row-1; r<=row+1; ++r) {
+            for (int c=col-1; c<=col+1; ++c) {
+                if (!(r == row && c == col)) {
+                    if (r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                            this.board[r][c] != Move.NONE) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int flipPieces(int row, int col, int[] flipped, int offset) {
+        int n = offset;
+
+        // figure out who made the move and who the other player is
+        Move me = this.board[row][col];
+        Move other = me == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+
+        // generate row and column deltas [-1, 0, +1] to check the eight directions
+        // on the board.  this code comes courtesy of a port of python code from
+        // the great and mighty oracle himself, Jim. <3
+        for (int rd=-1; rd<=1; ++rd) {
+            for (int cd=-1; cd<=1; ++cd) {
+                if (rd == 0 && cd == 0) {
+                    continue;
+                }
+
+                int r = row + rd;
+                int c = col + cd;
+
+                // Continue in the current direction until we go off the end of the
+                // board or we reach a square that does not contain an opponent's disc.
+                while (r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                        this.board[r][c] == other) {
+                    r += rd;
+                    c += cd;
+                }
+
+                // If we did not go off the board and the square we stopped on
+                // contains one of this player's discs, flips the ones in between.
+                if (r >= 0 && r < this.rows && c >= 0 && c < this.cols && this.board[r][c] == me) {
+                    // restart
+                    r = row + rd;
+                    c = col + cd;
+
+                    while (r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                            this.board[r][c] == other) {
+                        this.board[r][c] = me;
+                        flipped[n++] = r * this.cols + c;
+                        r += rd;
+                        c += cd;
+                    }
+                }
+            }
+        }
+        return n - offset;
+    }
+
+    @Override
+    public int legalMoves(int[] moves) {
+        int n = 0;
+        for (int row=0; row<this.rows; ++row) {
+            for (int col=0; col<this.cols; ++col) {
+                if (this.board[row][col] == Move.NONE && occupiedNeighbor(row, col)) {
+                    moves[n++] = row * this.cols + col;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public boolean wouldFlip(int row, int col, Move player) {
+        Move other = player == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+        for (int rd=-1; rd<=1; ++rd) {
+            for (int cd=-1; cd<=1; ++cd) {
+                if (rd == 0 && cd == 0) {
+                    continue;
+                }
+
+                // walk over at least one opponent disc and see if the run
+                // ends on one of the player's own
+                int r = row + rd;
+                int c = col + cd;
+                int run = 0;
+                while (r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                        this.board[r][c] == other) {
+                    r += rd;
+                    c += cd;
+                    ++run;
+                }
+                if (run > 0 && r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                        this.board[r][c] == player) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int flippingMoves(int[] moves, Move player) {
+        int n = 0;
+        for (int row=0; row<this.rows; ++row) {
+            for (int col=0; col<this.cols; ++col) {
+                if (this.board[row][col] == Move.NONE && wouldFlip(row, col, player)) {
+                    moves[n++] = row * this.cols + col;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public BoardEngine copy() {
+        ArrayBoard copy = new ArrayBoard(this.rows, this.cols);
+        for (int row=0; row<this.rows; ++row) {
+            System.arraycopy(this.board[row], 0, copy.board[row], 0, this.cols);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,183 @@
+package reversi;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads {@link BinaryProtocol} frames from a stream.  {@link #next()}
+ * reads a whole frame and returns its opcode; the frame's arguments are
+ * then available from {@link #row()}, {@link #col()} and
+ * {@link #message()}.  Apart from error messages, decoding allocates
+ * nothing.
+ */
+public class BinaryDecoder implements BinaryProtocol {
+    /** the longest error message accepted, in bytes */
+    private static final int MAX_MESSAGE = 1 << 16;
+
+    /** where the frames come from */
+    private InputStream in;
+    /** the row of the last move frame */
+    private int row;
+    /** the column of the last move frame */
+    private int col;
+    /** the message of the last error frame */
+    private String message;
+    /** the bitmask bytes of the last board delta frame */
+    private byte[] mask = new byte[0];
+    /** the index of the first byte of the bitmask on the board */
+    private int maskFirst;
+    /** how many bytes of {@link #mask} are in use */
+    private int maskLength;
+
+    /**
+     * Create a decoder.
+     *
+     * @param in where the frames come from
+     */
+    public BinaryDecoder(InputStream in) {
+        this.in = new BufferedInputStream(in);
+    }
+
+    /**
+     * Read a byte that must be there.
+     *
+     * @return the byte
+     * @throws IOException if the stream fails or ends
+     */
+    private int readByte() throws IOException {
+        int b = this.in.read();
+        if (b < 0) {
+            throw new EOFException("Connection closed mid-frame");
+        }
+        return b;
+    }
+
+    /**
+     * Read an unsigned LEB128 varint.
+     *
+     * @return the number
+     * @throws IOException if the stream fails or ends, or the number is
+     * too big for a non-negative int
+     */
+    private int varint() throws IOException {
+        int n = 0;
+        for (int shift=0; shift<32; shift+=7) {
+            int b = readByte();
+            if (shift == 28 && (b & 0x78) != 0) {
+                // only bits 28 to 30 are left before the sign bit
+                throw new IOException("Varint too big");
+            }
+            n |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    /**
+     * Read the next frame.
+     *
+     * @return the frame's opcode, or -1 if the stream has ended
+     * @throws IOException if the stream fails or the frame is not valid
+     */
+    public int next() throws IOException {
+        int op = this.in.read();
+        switch (op) {
+            case -1:
+            case OP_MAKE_MOVE:
+            case OP_GAME_WON:
+            case OP_GAME_LOST:
+            case OP_GAME_TIED:
+            case OP_PASS:
+                break;
+            case OP_MOVE:
+            case OP_MOVE_MADE:
+                this.row = varint();
+                this.col = varint();
+                break;
+            case OP_BOARD_DELTA:
+                this.row = varint();
+                this.col = varint();
+                this.maskFirst = varint();
+                this.maskLength = varint();
+                if (this.maskLength > MAX_MESSAGE) {
+                    throw new IOException("Board delta too long: " + this.maskLength);
+                }
+                if (this.mask.length < this.maskLength) {
+                    this.mask = new byte[Math.max(this.maskLength, this.mask.length * 2)];
+                }
+                for (int i=0; i<this.maskLength; ++i) {
+                    this.mask[i] = (byte) readByte();
+                }
+                break;
+            case OP_ERROR:
+                int length = varint();
+                if (length > MAX_MESSAGE) {
+                    throw new IOException("Error message too long: " + length);
+                }
+                byte[] bytes = new byte[length];
+                for (int i=0; i<length; ++i) {
+                    bytes[i] = (byte) readByte();
+                }
+                this.message = new String(bytes, StandardCharsets.UTF_8);
+                break;
+            default:
+                throw new IOException("Unknown opcode: " + op);
+        }
+        return op;
+    }
+
+    /**
+     * Get the squares flipped by the last {@link #OP_BOARD_DELTA}, packed
+     * as <tt>row*cols+col</tt>.  The time taken depends on how many
+     * squares were flipped and how far apart they are, not on the size of
+     * the board.
+     *
+     * @param squares where to put the squares; it must be big enough
+     * @return how many squares were written to the front of the array
+     */
+    public int flipped(int[] squares) {
+        int n = 0;
+        for (int i=0; i<this.maskLength; ++i) {
+            int bits = this.mask[i] & 0xFF;
+            while (bits != 0) {
+                squares[n++] = (this.maskFirst + i) * 8 + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Get the row of the last {@link #OP_MOVE}, {@link #OP_MOVE_MADE} or
+     * {@link #OP_BOARD_DELTA}.
+     *
+     * @return the row
+     */
+    public int row() {
+        return this.row;
+    }
+
+    /**
+     * Get the column of the last {@link #OP_MOVE}, {@link #OP_MOVE_MADE} or
+     * {@link #OP_BOARD_DELTA}.
+     *
+     * @return the column
+     */
+    public int col() {
+        return this.col;
+    }
+
+    /**
+     * Get the message of the last {@link #OP_ERROR}.
+     *
+     * @return the message
+     */
+    public String message() {
+        return this.message;
+    }
+}
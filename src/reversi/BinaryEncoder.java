@@ -0,0 +1,171 @@
+package reversi;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link BinaryProtocol} frames to a stream.  Each message is
+ * written to a buffer and sent with a single write when
+ * {@link #flush()} is called.  Apart from error messages, encoding
+ * allocates nothing.
+ */
+public class BinaryEncoder implements BinaryProtocol {
+    /** where the frames go */
+    private OutputStream out;
+    /** scratch space for the bitmask of a {@link #OP_BOARD_DELTA} */
+    private byte[] mask = new byte[0];
+
+    /**
+     * Create an encoder.
+     *
+     * @param out where the frames go
+     */
+    public BinaryEncoder(OutputStream out) {
+        this.out = new BufferedOutputStream(out);
+    }
+
+    /**
+     * Write an unsigned LEB128 varint.
+     *
+     * @param n the number, which must not be negative
+     * @throws IOException if the stream fails
+     */
+    private void varint(int n) throws IOException {
+        while (n >= 0x80) {
+            this.out.write(n & 0x7F | 0x80);
+            n >>>= 7;
+        }
+        this.out.write(n);
+    }
+
+    /**
+     * Write a {@link #OP_MAKE_MOVE} frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void makeMove() throws IOException {
+        this.out.write(OP_MAKE_MOVE);
+    }
+
+    /**
+     * Write a {@link #OP_MOVE} frame.
+     *
+     * @param row the row
+     * @param col the column
+     * @throws IOException if the stream fails
+     */
+    public void move(int row, int col) throws IOException {
+        this.out.write(OP_MOVE);
+        varint(row);
+        varint(col);
+    }
+
+    /**
+     * Write a {@link #OP_MOVE_MADE} frame.
+     *
+     * @param row the row
+     * @param col the column
+     * @throws IOException if the stream fails
+     */
+    public void moveMade(int row, int col) throws IOException {
+        this.out.write(OP_MOVE_MADE);
+        varint(row);
+        varint(col);
+    }
+
+    /**
+     * Write a {@link #OP_BOARD_DELTA} frame.
+     *
+     * @param row the row of the move
+     * @param col the column of the move
+     * @param flipped the squares flipped, packed as <tt>row*cols+col</tt>
+     * @param count how many squares were flipped
+     * @throws IOException if the stream fails
+     */
+    public void boardDelta(int row, int col, int[] flipped, int count)
+            throws IOException {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (int i=0; i<count; ++i) {
+            first = Math.min(first, flipped[i] >>> 3);
+            last = Math.max(last, flipped[i] >>> 3);
+        }
+        int length = count == 0 ? 0 : last + 1 - first;
+        if (this.mask.length < length) {
+            this.mask = new byte[Math.max(length, this.mask.length * 2)];
+        }
+        for (int i=0; i<length; ++i) {
+            this.mask[i] = 0;
+        }
+        for (int i=0; i<count; ++i) {
+            this.mask[(flipped[i] >>> 3) - first] |= 1 << (flipped[i] & 7);
+        }
+
+        this.out.write(OP_BOARD_DELTA);
+        varint(row);
+        varint(col);
+        varint(count == 0 ? 0 : first);
+        varint(length);
+        this.out.write(this.mask, 0, length);
+    }
+
+    /**
+     * Write a {@link #OP_PASS} frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void pass() throws IOException {
+        this.out.write(OP_PASS);
+    }
+
+    /**
+     * Write a {@link #OP_GAME_WON} frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void gameWon() throws IOException {
+        this.out.write(OP_GAME_WON);
+    }
+
+    /**
+     * Write a {@link #OP_GAME_LOST} frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void gameLost() throws IOException {
+        this.out.write(OP_GAME_LOST);
+    }
+
+    /**
+     * Write a {@link #OP_GAME_TIED} frame.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void gameTied() throws IOException {
+        this.out.write(OP_GAME_TIED);
+    }
+
+    /**
+     * Write an {@link #OP_ERROR} frame.
+     *
+     * @param message the error message
+     * @throws IOException if the stream fails
+     */
+    public void error(String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        this.out.write(OP_ERROR);
+        varint(bytes.length);
+        this.out.write(bytes);
+    }
+
+    /**
+     * Send everything written so far.
+     *
+     * @throws IOException if the stream fails
+     */
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+}
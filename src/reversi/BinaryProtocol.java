@@ -0,0 +1,78 @@
+package reversi;
+
+/**
+ * The {@link BinaryProtocol} interface provides the opcodes of the compact
+ * binary form of the {@link ReversiProtocol} messages.<P>
+ *
+ * The {@link ReversiProtocol#CONNECT} handshake is always text.  A server
+ * that can speak binary adds its highest protocol version to the request,
+ * for example <tt>CONNECT 8 8 3</tt>, and then waits for the client to
+ * answer with the version it wants to use, for example
+ * <tt>PROTOCOL 3</tt>, or <tt>PROTOCOL 1</tt> to stay on text.  A client
+ * that says nothing is an older one, and stays on text.  From then on
+ * every message in both directions is a frame: one opcode byte, followed
+ * by the message's arguments.  Row and column numbers are unsigned LEB128
+ * varints, so on boards up to 128x128 a whole move is three bytes.  Error
+ * messages are a varint byte count followed by that many bytes of UTF-8.
+ *
+ * @see BinaryEncoder
+ * @see BinaryDecoder
+ */
+public interface BinaryProtocol {
+    /** protocol version of the original text messages */
+    public static final int TEXT_VERSION = 1;
+
+    /** protocol version of the binary frames */
+    public static final int BINARY_VERSION = 2;
+
+    /**
+     * protocol version of the binary frames, with every
+     * {@link #OP_MOVE_MADE} replaced by an {@link #OP_BOARD_DELTA}
+     */
+    public static final int DELTA_VERSION = 3;
+
+    /**
+     * Response sent from the client to the server to choose the protocol
+     * version, if the server offered one in its
+     * {@link ReversiProtocol#CONNECT} request.<P>
+     *
+     * For example (to use binary frames): PROTOCOL 2\n
+     */
+    public static final String PROTOCOL = "PROTOCOL";
+
+    /** {@link ReversiProtocol#MAKE_MOVE}; no arguments */
+    public static final int OP_MAKE_MOVE = 0x01;
+
+    /** {@link ReversiProtocol#MOVE}; row and column */
+    public static final int OP_MOVE = 0x02;
+
+    /** {@link ReversiProtocol#MOVE_MADE}; row and column */
+    public static final int OP_MOVE_MADE = 0x03;
+
+    /** {@link ReversiProtocol#GAME_WON}; no arguments */
+    public static final int OP_GAME_WON = 0x04;
+
+    /** {@link ReversiProtocol#GAME_LOST}; no arguments */
+    public static final int OP_GAME_LOST = 0x05;
+
+    /** {@link ReversiProtocol#GAME_TIED}; no arguments */
+    public static final int OP_GAME_TIED = 0x06;
+
+    /** {@link ReversiProtocol#ERROR}; the message */
+    public static final int OP_ERROR = 0x07;
+
+    /**
+     * A move has been made, and these discs flipped: the row and column of
+     * the move, then the flipped squares as a bitmask.  Bit <tt>i</tt> of
+     * the mask is the square <tt>row*cols+col == i</tt>, and bit
+     * <tt>i%8</tt> of byte <tt>i/8</tt> holds it.  Only the bytes from the
+     * first to the last one with a bit set are sent: a varint index of the
+     * first byte and a varint byte count come before them.  A client
+     * applies it with {@link reversi2.Board#deltaMade}, without working out
+     * any flips of its own.  Only sent in {@link #DELTA_VERSION}.
+     */
+    public static final int OP_BOARD_DELTA = 0x08;
+
+    /** {@link ReversiProtocol#PASS}; no arguments */
+    public static final int OP_PASS = 0x09;
+}
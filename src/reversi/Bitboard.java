@@ -0,0 +1,223 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * A {@link BoardEngine} for the standard {@link Reversi#DIM}x{@link Reversi#DIM}
+ * board that keeps each player's discs in a single 64 bit word.  Bit
+ * <tt>row*8+col</tt> is set when that square holds one of the player's
+ * discs, so the flips in all eight directions are found with shifts and
+ * masks rather than by walking the board one square at a time.
+ */
+class Bitboard implements BoardEngine {
+    /** every square except those in column 0 */
+    private static final long NOT_COL_0 = 0xFEFEFEFEFEFEFEFEL;
+    /** every square except those in column 7 */
+    private static final long NOT_COL_7 = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * Shift amounts for the four direction pairs: E/W, S/N, SE/NW and SW/NE.
+     * A left shift moves towards higher rows/columns, a right shift back.
+     */
+    private static final int[] SHIFTS = {1, 8, 9, 7};
+    /** masks that stop a left shift from wrapping onto the next row */
+    private static final long[] LEFT_MASKS = {NOT_COL_0, -1L, NOT_COL_0, NOT_COL_7};
+    /** masks that stop a right shift from wrapping onto the previous row */
+    private static final long[] RIGHT_MASKS = {NOT_COL_7, -1L, NOT_COL_7, NOT_COL_0};
+
+    /** player one's discs */
+    private long p1;
+    /** player two's discs */
+    private long p2;
+
+    /**
+     * Get the bit for a square.
+     *
+     * @param row the row
+     * @param col the column
+     * @return a word with only that square's bit set
+     */
+    private static long bit(int row, int col) {
+        return 1L << (row * Reversi.DIM + col);
+    }
+
+    /**
+     * Get every square adjacent to a set of squares.
+     *
+     * @param x the squares
+     * @return the union of the eight neighbors of each square in x
+     */
+    static long neighbors(long x) {
+        long n = 0L;
+        for (int d=0; d<SHIFTS.length; ++d) {
+            n |= (x << SHIFTS[d]) & LEFT_MASKS[d];
+            n |= (x >>> SHIFTS[d]) & RIGHT_MASKS[d];
+        }
+        return n;
+    }
+
+    /**
+     * Find the discs flipped by placing a disc on a square.
+     *
+     * @param move the square being played
+     * @param own the mover's discs
+     * @param opp the opponent's discs
+     * @return the opponent discs that would change color
+     */
+    static long flips(long move, long own, long opp) {
+        long flips = 0L;
+        for (int d=0; d<SHIFTS.length; ++d) {
+            int s = SHIFTS[d];
+
+            // walk over opponent discs towards higher squares...
+            long mask = LEFT_MASKS[d];
+            long line = 0L;
+            long x = (move << s) & mask;
+            while ((x & opp) != 0) {
+                line |= x;
+                x = (x << s) & mask;
+            }
+            // ...and keep them if the run ends on one of our own discs
+            if ((x & own) != 0) {
+                flips |= line;
+            }
+
+            // then the same towards lower squares
+            mask = RIGHT_MASKS[d];
+            line = 0L;
+            x = (move >>> s) & mask;
+            while ((x & opp) != 0) {
+                line |= x;
+                x = (x >>> s) & mask;
+            }
+            if ((x & own) != 0) {
+                flips |= line;
+            }
+        }
+        return flips;
+    }
+
+    /**
+     * Find every empty square where placing a disc would flip something.
+     * Runs of opponent discs are grown out from the mover's discs in all
+     * eight directions at once; a run can be at most six discs long.
+     *
+     * @param own the mover's discs
+     * @param opp the opponent's discs
+     * @return the squares the mover can play
+     */
+    static long moves(long own, long opp) {
+        long empty = ~(own | opp);
+        long moves = 0L;
+        for (int d=0; d<SHIFTS.length; ++d) {
+            int s = SHIFTS[d];
+
+            long mask = LEFT_MASKS[d];
+            long x = (own << s) & mask & opp;
+            for (int i=1; i<Reversi.DIM - 2; ++i) {
+                x |= (x << s) & mask & opp;
+            }
+            moves |= (x << s) & mask & empty;
+
+            mask = RIGHT_MASKS[d];
+            x = (own >>> s) & mask & opp;
+            for (int i=1; i<Reversi.DIM - 2; ++i) {
+                x |= (x >>> s) & mask & opp;
+            }
+            moves |= (x >>> s) & mask & empty;
+        }
+        return moves;
+    }
+
+    @Override
+    public Move get(int row, int col) {
+        long b = bit(row, col);
+        if ((this.p1 & b) != 0) {
+            return Move.PLAYER_ONE;
+        } else if ((this.p2 & b) != 0) {
+            return Move.PLAYER_TWO;
+        } else {
+            return Move.NONE;
+        }
+    }
+
+    @Override
+    public void set(int row, int col, Move move) {
+        long b = bit(row, col);
+        this.p1 &= ~b;
+        this.p2 &= ~b;
+        if (move == Move.PLAYER_ONE) {
+            this.p1 |= b;
+        } else if (move == Move.PLAYER_TWO) {
+            this.p2 |= b;
+        }
+    }
+
+    @Override
+    public boolean occupiedNeighbor(int row, int col) {
+        return (neighbors(bit(row, col)) & (this.p1 | this.p2)) != 0;
+    }
+
+    @Override
+    public int flipPieces(int row, int col, int[] flipped, int offset) {
+        long b = bit(row, col);
+        long f;
+        if ((this.p1 & b) != 0) {
+            f = flips(b, this.p1, this.p2);
+            this.p1 |= f;
+            this.p2 &= ~f;
+        } else {
+            f = flips(b, this.p2, this.p1);
+            this.p2 |= f;
+            this.p1 &= ~f;
+        }
+
+        // bit numbers are already row*8+col
+        int n = offset;
+        while (f != 0) {
+            flipped[n++] = Long.numberOfTrailingZeros(f);
+            f &= f - 1;
+        }
+        return n - offset;
+    }
+
+    @Override
+    public int legalMoves(int[] moves) {
+        long occupied = this.p1 | this.p2;
+        long frontier = neighbors(occupied) & ~occupied;
+        int n = 0;
+        while (frontier != 0) {
+            // bit numbers are already row*8+col
+            moves[n++] = Long.numberOfTrailingZeros(frontier);
+            frontier &= frontier - 1;
+        }
+        return n;
+    }
+
+    @Override
+    public boolean wouldFlip(int row, int col, Move player) {
+        return player == Move.PLAYER_ONE ? flips(bit(row, col), this.p1, this.p2) != 0 :
+                flips(bit(row, col), this.p2, this.p1) != 0;
+    }
+
+    @Override
+    public int flippingMoves(int[] moves, Move player) {
+        long m = player == Move.PLAYER_ONE ? moves(this.p1, this.p2) :
+                moves(this.p2, this.p1);
+        int n = 0;
+        while (m != 0) {
+            // bit numbers are already row*8+col
+            moves[n++] = Long.numberOfTrailingZeros(m);
+            m &= m - 1;
+        }
+        return n;
+    }
+
+    @Override
+    public BoardEngine copy() {
+        Bitboard copy = new Bitboard();
+        copy.p1 = this.p1;
+        copy.p2 = this.p2;
+        return copy;
+    }
+}
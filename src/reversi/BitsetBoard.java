@@ -0,0 +1,322 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * A {@link BoardEngine} for boards of any size that keeps each player's
+ * discs in a multi-word bitset.<P>
+ *
+ * Each row is stored with a stride of <tt>cols+1</tt> bits, and a whole
+ * empty row is kept above and below the board.  The extra column means
+ * that stepping off either side of a row, or off the top or bottom of the
+ * board, always lands on a square that is never set for either player.  A
+ * run of discs therefore stops at the edge of the board on its own, and
+ * every direction is just a fixed step through the bitset with no bounds
+ * checks.
+ */
+class BitsetBoard implements BoardEngine {
+    /** distance in bits from one row to the next */
+    private int stride;
+    /** bit offsets to the eight neighbors of a square */
+    private int[] steps;
+    /** the same offsets as {@link #steps} in packed <tt>row*cols+col</tt> form */
+    private int[] packedSteps;
+    /** player one's discs */
+    private long[] p1;
+    /** player two's discs */
+    private long[] p2;
+    /** the squares that are really on the board, i.e. not padding */
+    private long[] squares;
+    /** scratch space for the occupied squares in {@link #findFrontier()} */
+    private long[] occupied;
+    /** scratch space for the frontier squares in {@link #findFrontier()} */
+    private long[] frontier;
+
+    /**
+     * Construct an empty board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    BitsetBoard(int rows, int cols) {
+        this.stride = cols + 1;
+        this.steps = new int[] {
+                1, -1,
+                this.stride, -this.stride,
+                this.stride + 1, -this.stride - 1,
+                this.stride - 1, -this.stride + 1
+        };
+        this.packedSteps = new int[] {
+                1, -1,
+                cols, -cols,
+                cols + 1, -cols - 1,
+                cols - 1, -cols + 1
+        };
+        // one padding row above and below, plus a bit either end for the
+        // diagonal steps out of the corners
+        int bits = (rows + 2) * this.stride + 2;
+        int words = (bits + 63) >>> 6;
+        this.p1 = new long[words];
+        this.p2 = new long[words];
+        this.squares = new long[words];
+        for (int row=0; row<rows; ++row) {
+            for (int col=0; col<cols; ++col) {
+                setBit(this.squares, index(row, col));
+            }
+        }
+        this.occupied = new long[words];
+        this.frontier = new long[words];
+    }
+
+    /**
+     * Copy a board.  The fixed layout is shared, the discs are not.
+     *
+     * @param other the board to copy
+     */
+    private BitsetBoard(BitsetBoard other) {
+        this.stride = other.stride;
+        this.steps = other.steps;
+        this.packedSteps = other.packedSteps;
+        this.squares = other.squares;
+        this.p1 = other.p1.clone();
+        this.p2 = other.p2.clone();
+        this.occupied = new long[other.occupied.length];
+        this.frontier = new long[other.frontier.length];
+    }
+
+    /**
+     * Get the bit number of a square.
+     *
+     * @param row the row
+     * @param col the column
+     * @return where the square lives in the bitsets
+     */
+    private int index(int row, int col) {
+        return (row + 1) * this.stride + col + 1;
+    }
+
+    /**
+     * Is a bit set?
+     *
+     * @param bits the bitset
+     * @param i the bit number
+     * @return whether bit i is set
+     */
+    private static boolean test(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Set a bit.
+     *
+     * @param bits the bitset
+     * @param i the bit number
+     */
+    private static void setBit(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    /**
+     * Clear a bit.
+     *
+     * @param bits the bitset
+     * @param i the bit number
+     */
+    private static void clearBit(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    @Override
+    public Move get(int row, int col) {
+        int i = index(row, col);
+        if (test(this.p1, i)) {
+            return Move.PLAYER_ONE;
+        } else if (test(this.p2, i)) {
+            return Move.PLAYER_TWO;
+        } else {
+            return Move.NONE;
+        }
+    }
+
+    @Override
+    public void set(int row, int col, Move move) {
+        int i = index(row, col);
+        clearBit(this.p1, i);
+        clearBit(this.p2, i);
+        if (move == Move.PLAYER_ONE) {
+            setBit(this.p1, i);
+        } else if (move == Move.PLAYER_TWO) {
+            setBit(this.p2, i);
+        }
+    }
+
+    @Override
+    public boolean occupiedNeighbor(int row, int col) {
+        int i = index(row, col);
+        for (int step : this.steps) {
+            int n = i + step;
+            if (test(this.p1, n) || test(this.p2, n)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int flipPieces(int row, int col, int[] flipped, int offset) {
+        int i = index(row, col);
+        int packed = row * (this.stride - 1) + col;
+        int n = offset;
+        long[] own = test(this.p1, i) ? this.p1 : this.p2;
+        long[] opp = own == this.p1 ? this.p2 : this.p1;
+
+        for (int d=0; d<this.steps.length; ++d) {
+            int step = this.steps[d];
+
+            // walk over the opponent's discs; the padding squares stop us at the edge
+            int end = i + step;
+            while (test(opp, end)) {
+                end += step;
+            }
+
+            // if the run ends on one of our own discs, flip the ones in between
+            if (test(own, end)) {
+                int p = packed;
+                for (int f=i+step; f!=end; f+=step) {
+                    setBit(own, f);
+                    clearBit(opp, f);
+                    p += this.packedSteps[d];
+                    flipped[n++] = p;
+                }
+            }
+        }
+        return n - offset;
+    }
+
+    /**
+     * Shift a bitset by a number of bits and OR it into another.
+     *
+     * @param src the bitset to shift
+     * @param shift how far to shift; positive moves bits to higher numbers
+     * @param dst where to OR the result
+     */
+    private static void orShifted(long[] src, int shift, long[] dst) {
+        int words = shift >= 0 ? shift >>> 6 : -shift >>> 6;
+        int bits = (shift >= 0 ? shift : -shift) & 63;
+        for (int w=0; w<dst.length; ++w) {
+            if (shift >= 0) {
+                int from = w - words;
+                if (from >= 0) {
+                    dst[w] |= src[from] << bits;
+                    if (bits != 0 && from > 0) {
+                        dst[w] |= src[from - 1] >>> (64 - bits);
+                    }
+                }
+            } else {
+                int from = w + words;
+                if (from < src.length) {
+                    dst[w] |= src[from] >>> bits;
+                    if (bits != 0 && from + 1 < src.length) {
+                        dst[w] |= src[from + 1] << (64 - bits);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fill {@link #frontier} with the empty squares that have an occupied
+     * neighbor, and {@link #occupied} with the occupied ones.
+     */
+    private void findFrontier() {
+        for (int w=0; w<this.occupied.length; ++w) {
+            this.occupied[w] = this.p1[w] | this.p2[w];
+            this.frontier[w] = 0L;
+        }
+
+        // gather the neighbors of every disc at once, a word at a time
+        for (int step : this.steps) {
+            orShifted(this.occupied, step, this.frontier);
+        }
+        for (int w=0; w<this.frontier.length; ++w) {
+            this.frontier[w] &= ~this.occupied[w] & this.squares[w];
+        }
+    }
+
+    /**
+     * Would a disc placed on an empty square flip anything?
+     *
+     * @param i the square's bit number
+     * @param own the mover's discs
+     * @param opp the opponent's discs
+     * @return whether at least one opponent disc would be flipped
+     */
+    private boolean wouldFlip(int i, long[] own, long[] opp) {
+        for (int step : this.steps) {
+            int end = i + step;
+            if (!test(opp, end)) {
+                continue;
+            }
+            do {
+                end += step;
+            } while (test(opp, end));
+            if (test(own, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int legalMoves(int[] moves) {
+        findFrontier();
+        int cols = this.stride - 1;
+        int n = 0;
+        for (int w=0; w<this.frontier.length; ++w) {
+            long bits = this.frontier[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int row = i / this.stride - 1;
+                int col = i - (row + 1) * this.stride - 1;
+                moves[n++] = row * cols + col;
+                bits &= bits - 1;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public boolean wouldFlip(int row, int col, Move player) {
+        return player == Move.PLAYER_ONE ? wouldFlip(index(row, col), this.p1, this.p2) :
+                wouldFlip(index(row, col), this.p2, this.p1);
+    }
+
+    @Override
+    public int flippingMoves(int[] moves, Move player) {
+        long[] own = player == Move.PLAYER_ONE ? this.p1 : this.p2;
+        long[] opp = own == this.p1 ? this.p2 : this.p1;
+
+        // only a square next to a disc can flip anything
+        findFrontier();
+        int cols = this.stride - 1;
+        int n = 0;
+        for (int w=0; w<this.frontier.length; ++w) {
+            long bits = this.frontier[w];
+            while (bits != 0) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (wouldFlip(i, own, opp)) {
+                    int row = i / this.stride - 1;
+                    int col = i - (row + 1) * this.stride - 1;
+                    moves[n++] = row * cols + col;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public BoardEngine copy() {
+        return new BitsetBoard(this);
+    }
+}
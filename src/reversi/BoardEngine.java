@@ -0,0 +1,88 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * The storage behind a {@link Reversi} board.  {@link Reversi} does the
+ * rule checking and turn keeping, and hands the squares themselves off to
+ * one of these so that the layout can be picked to suit the board size.
+ */
+interface BoardEngine {
+    /**
+     * What is at this square?
+     *
+     * @param row the row
+     * @param col the column
+     * @return the player (or {@link Move#NONE}) at the given location
+     */
+    Move get(int row, int col);
+
+    /**
+     * Put a disc (or {@link Move#NONE}) on a square without flipping
+     * anything.
+     *
+     * @param row the row
+     * @param col the column
+     * @param move what to put there
+     */
+    void set(int row, int col, Move move);
+
+    /**
+     * Check that there is an occupied neighbor of a square.
+     *
+     * @param row the row
+     * @param col the column
+     * @return whether there is an occupied neighbor or not
+     */
+    boolean occupiedNeighbor(int row, int col);
+
+    /**
+     * Flip all the pieces on the board that are affected by the disc that
+     * was just placed at (row, col), and record which ones they were.
+     *
+     * @param row the row
+     * @param col the column
+     * @param flipped where to record the flipped squares, packed as
+     *                <tt>row*cols+col</tt>; there must be room for
+     *                <tt>rows*cols</tt> entries after offset
+     * @param offset where to start recording
+     * @return how many discs were flipped
+     */
+    int flipPieces(int row, int col, int[] flipped, int offset);
+
+    /**
+     * Find every empty square with an occupied neighbor.
+     *
+     * @param moves where to put the squares, packed as <tt>row*cols+col</tt>
+     * @return how many squares were written
+     */
+    int legalMoves(int[] moves);
+
+    /**
+     * Would a disc placed on an empty square flip anything?
+     *
+     * @param row the row
+     * @param col the column
+     * @param player whose disc it would be
+     * @return whether at least one of the opponent's discs would be flipped
+     */
+    boolean wouldFlip(int row, int col, Move player);
+
+    /**
+     * Find every empty square where a disc of the player's would flip at
+     * least one of the opponent's: the legal moves under the
+     * {@link Reversi.Rules#STRICT strict rules}.
+     *
+     * @param moves where to put the squares, packed as <tt>row*cols+col</tt>
+     * @param player who is moving
+     * @return how many squares were written
+     */
+    int flippingMoves(int[] moves, Move player);
+
+    /**
+     * Make an independent copy of this board.
+     *
+     * @return the copy
+     */
+    BoardEngine copy();
+}
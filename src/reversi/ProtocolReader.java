@@ -0,0 +1,232 @@
+package reversi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads {@link ReversiProtocol} messages from a stream.  {@link #next()}
+ * reads a whole line and returns its command; the integer arguments that
+ * follow it are then available from {@link #arg(int)}.  The line is
+ * decoded straight out of a byte buffer that is reused from one message
+ * to the next, so reading a known command with integer arguments creates
+ * no objects at all.  Only the text of an {@link ReversiProtocol#ERROR}
+ * message, or of a line that cannot be understood, is ever turned into a
+ * {@link String}, and only when it is asked for.
+ */
+public class ProtocolReader implements ReversiProtocol {
+    /** the longest line accepted, in bytes */
+    private static final int MAX_LINE = 1 << 12;
+
+    /** the most integer arguments a line may have */
+    private static final int MAX_ARGS = 4;
+
+    /** every command that can be recognized */
+    private static final String[] COMMANDS = {
+        CONNECT, JOIN, WATCH, MAKE_MOVE, MOVE, MOVE_MADE, PASS,
+        GAME_WON, GAME_LOST, GAME_TIED, ERROR, BinaryProtocol.PROTOCOL
+    };
+
+    /** the bytes of each of the {@link #COMMANDS} */
+    private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+
+    static {
+        for (int i = 0; i < COMMANDS.length; ++i) {
+            COMMAND_BYTES[i] = COMMANDS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** where the lines come from */
+    private InputStream in;
+    /** bytes read but not yet consumed */
+    private byte[] buffer = new byte[MAX_LINE];
+    /** where the unconsumed bytes start */
+    private int head;
+    /** where the unconsumed bytes end */
+    private int tail;
+    /** where the last line starts in the buffer */
+    private int lineStart;
+    /** where the last line ends in the buffer, before any line ending */
+    private int lineEnd;
+    /** where the last line's arguments start in the buffer */
+    private int argStart;
+    /** the integer arguments of the last line */
+    private int[] args = new int[MAX_ARGS];
+    /** how many integer arguments the last line had, or -1 */
+    private int argCount;
+
+    /**
+     * Create a reader.  Nothing else may read from the stream afterwards,
+     * since the reader may have buffered bytes past the line it returned.
+     *
+     * @param in where the lines come from
+     */
+    public ProtocolReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Read the next line.
+     *
+     * @return the command that starts the line, which is one of the
+     * {@link ReversiProtocol} constants (or
+     * {@link BinaryProtocol#PROTOCOL}) itself if it is known, a new string
+     * if it is not, or null if the stream ended first
+     * @throws IOException if the stream fails, or the line is too long
+     */
+    public String next() throws IOException {
+        if (!fillLine()) {
+            return null;
+        }
+
+        int end = this.lineStart;
+        while (end < this.lineEnd && this.buffer[end] != ' ') {
+            ++end;
+        }
+        this.argStart = end < this.lineEnd ? end + 1 : end;
+        parseArgs();
+
+        for (int i = 0; i < COMMANDS.length; ++i) {
+            if (matches(COMMAND_BYTES[i], this.lineStart, end)) {
+                return COMMANDS[i];
+            }
+        }
+        return new String(this.buffer, this.lineStart, end - this.lineStart,
+                StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * How many integer arguments did the last line have?
+     *
+     * @return the number of arguments, or -1 if any argument was not an
+     * integer (as in an {@link ReversiProtocol#ERROR} message)
+     */
+    public int argCount() {
+        return this.argCount;
+    }
+
+    /**
+     * Get one of the last line's integer arguments.
+     *
+     * @param i which argument, counting from 0
+     * @rit.pre i &lt; {@link #argCount()}
+     * @return the argument
+     */
+    public int arg(int i) {
+        return this.args[i];
+    }
+
+    /**
+     * Get the text after the command on the last line, such as an
+     * {@link ReversiProtocol#ERROR} message.
+     *
+     * @return the arguments, trimmed
+     */
+    public String arguments() {
+        return new String(this.buffer, this.argStart,
+                this.lineEnd - this.argStart, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Get the whole of the last line, for error reports.
+     *
+     * @return the line
+     */
+    public String line() {
+        return new String(this.buffer, this.lineStart,
+                this.lineEnd - this.lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Make sure a whole line is in the buffer, reading more from the
+     * stream as needed, and mark where it starts and ends.
+     *
+     * @return false if the stream ended before the line did
+     * @throws IOException if the stream fails, or the line is too long
+     */
+    private boolean fillLine() throws IOException {
+        int scan = this.head;
+        while (true) {
+            for (; scan < this.tail; ++scan) {
+                if (this.buffer[scan] == '\n') {
+                    this.lineStart = this.head;
+                    this.lineEnd = scan > this.head && this.buffer[scan - 1] == '\r'
+                            ? scan - 1 : scan;
+                    this.head = scan + 1;
+                    return true;
+                }
+            }
+
+            // no line ending yet: move what is there to the front and
+            // read more behind it
+            if (this.head > 0) {
+                System.arraycopy(this.buffer, this.head, this.buffer, 0,
+                        this.tail - this.head);
+                scan -= this.head;
+                this.tail -= this.head;
+                this.head = 0;
+            }
+            if (this.tail == this.buffer.length) {
+                throw new IOException("Protocol line too long");
+            }
+            int n = this.in.read(this.buffer, this.tail,
+                    this.buffer.length - this.tail);
+            if (n < 0) {
+                return false;
+            }
+            this.tail += n;
+        }
+    }
+
+    /**
+     * Parse the space separated integers after the command into
+     * {@link #args}.
+     */
+    private void parseArgs() {
+        this.argCount = 0;
+        int i = this.argStart;
+        while (i < this.lineEnd) {
+            if (this.buffer[i] == ' ') {
+                ++i;
+                continue;
+            }
+            boolean negative = this.buffer[i] == '-';
+            if (negative) {
+                ++i;
+            }
+            int start = i;
+            long n = 0;
+            while (i < this.lineEnd && this.buffer[i] >= '0'
+                    && this.buffer[i] <= '9' && n <= Integer.MAX_VALUE) {
+                n = n * 10 + (this.buffer[i++] - '0');
+            }
+            if (i == start || n > Integer.MAX_VALUE
+                    || (i < this.lineEnd && this.buffer[i] != ' ')
+                    || this.argCount == MAX_ARGS) {
+                this.argCount = -1;
+                return;
+            }
+            this.args[this.argCount++] = (int) (negative ? -n : n);
+        }
+    }
+
+    /**
+     * Is a stretch of the buffer equal to a command?
+     *
+     * @param command the command's bytes
+     * @param start where the stretch starts
+     * @param end where the stretch ends
+     * @return whether they are the same
+     */
+    private boolean matches(byte[] command, int start, int end) {
+        if (end - start != command.length) {
+            return false;
+        }
+        for (int i = 0; i < command.length; ++i) {
+            if (this.buffer[start + i] != command[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * A {@link BoardEngine} that keeps a {@link Move} for every square in a
+ * flat array indexed <tt>row*cols+col</tt>, and walks the board with a
+ * {@link Rays} table.  A walk in any direction is a fixed step through the
+ * array for at most as many squares as the table says the ray holds, so
+ * the inner loops compare only the discs, never the row and column
+ * against the edges of the board.  It works for any board size.
+ */
+class RayBoard implements BoardEngine {
+    /** number of rows in board */
+    private int rows;
+    /** number of columns in board */
+    private int cols;
+    /** the board */
+    private Move[] board;
+    /** the rays from every square, shared with copies of this board */
+    private Rays rays;
+
+    /**
+     * Construct an empty board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    RayBoard(int rows, int cols) {
+        this(rows, cols, new Rays(rows, cols));
+        for (int i=0; i<this.board.length; ++i) {
+            this.board[i] = Move.NONE;
+        }
+    }
+
+    /**
+     * Construct a board with no squares filled in.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param rays the rays of a board this size
+     */
+    private RayBoard(int rows, int cols, Rays rays) {
+        this.rows = rows;
+        this.cols = cols;
+        this.board = new Move[rows * cols];
+        this.rays = rays;
+    }
+
+    @Override
+    public Move get(int row, int col) {
+        return this.board[row * this.cols + col];
+    }
+
+    @Override
+    public void set(int row, int col, Move move) {
+        this.board[row * this.cols + col] = move;
+    }
+
+    @Override
+    public boolean occupiedNeighbor(int row, int col) {
+        int square = row * this.cols + col;
+        for (int d=0; d<Rays.DIRECTIONS; ++d) {
+            if (this.rays.length(square, d) > 0 &&
+                    this.board[square + this.rays.step(d)] != Move.NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the opponent's discs that a disc on a square would flip in one
+     * direction.
+     *
+     * @param square the square, packed as <tt>row*cols+col</tt>
+     * @param d the direction
+     * @param me whose disc it is
+     * @param other the opponent
+     * @return how many would flip, which is 0 unless the run of the
+     * opponent's discs ends on one of mine before the edge
+     */
+    private int run(int square, int d, Move me, Move other) {
+        int step = this.rays.step(d);
+        int length = this.rays.length(square, d);
+        int s = square + step;
+        int n = 0;
+        while (n < length && this.board[s] == other) {
+            s += step;
+            ++n;
+        }
+        return n < length && this.board[s] == me ? n : 0;
+    }
+
+    @Override
+    public int flipPieces(int row, int col, int[] flipped, int offset) {
+        int square = row * this.cols + col;
+        Move me = this.board[square];
+        Move other = me == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+        int n = offset;
+        for (int d=0; d<Rays.DIRECTIONS; ++d) {
+            int count = run(square, d, me, other);
+            int step = this.rays.step(d);
+            for (int i=0, s=square+step; i<count; ++i, s+=step) {
+                this.board[s] = me;
+                flipped[n++] = s;
+            }
+        }
+        return n - offset;
+    }
+
+    @Override
+    public int legalMoves(int[] moves) {
+        int n = 0;
+        for (int square=0; square<this.board.length; ++square) {
+            if (this.board[square] == Move.NONE &&
+                    occupiedNeighbor(square / this.cols, square % this.cols)) {
+                moves[n++] = square;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public boolean wouldFlip(int row, int col, Move player) {
+        int square = row * this.cols + col;
+        Move other = player == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+        for (int d=0; d<Rays.DIRECTIONS; ++d) {
+            if (run(square, d, player, other) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int flippingMoves(int[] moves, Move player) {
+        int n = 0;
+        for (int square=0; square<this.board.length; ++square) {
+            if (this.board[square] == Move.NONE &&
+                    wouldFlip(square / this.cols, square % this.cols, player)) {
+                moves[n++] = square;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public BoardEngine copy() {
+        RayBoard copy = new RayBoard(this.rows, this.cols, this.rays);
+        System.arraycopy(this.board, 0, copy.board, 0, this.board.length);
+        return copy;
+    }
+}
@@ -0,0 +1,80 @@
+package reversi;
+
+/**
+ * How far a board of a given size reaches from each square in each of the
+ * eight directions.  The eight rays from a square are all measured once,
+ * when the table is built, so code that walks along a ray needs only a
+ * count of the steps it may take instead of checking the row and column
+ * against the edges of the board at every step.  Squares are numbered
+ * <tt>row*cols+col</tt>, and a step in a direction is a fixed change in
+ * that number, so a walk is just an index moving through a flat array.<P>
+ *
+ * A table never changes once built, so boards of the same size, and
+ * copies of a board, can share one.
+ */
+public final class Rays {
+    /** the number of directions */
+    public static final int DIRECTIONS = 8;
+
+    /** row change of a step in each direction: E, W, S, N, SE, NW, SW, NE */
+    private static final int[] ROW_DELTAS = {0, 0, 1, -1, 1, -1, 1, -1};
+    /** column change of a step in each direction */
+    private static final int[] COL_DELTAS = {1, -1, 0, 0, 1, -1, -1, 1};
+
+    /** change in the square number of a step in each direction */
+    private final int[] steps;
+    /**
+     * the number of squares between each square and the edge of the
+     * board, in each direction; the rays of square <tt>s</tt> are at
+     * <tt>s*DIRECTIONS</tt>
+     */
+    private final int[] lengths;
+
+    /**
+     * Measure the rays of a board.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     */
+    public Rays(int rows, int cols) {
+        this.steps = new int[DIRECTIONS];
+        for (int d=0; d<DIRECTIONS; ++d) {
+            this.steps[d] = ROW_DELTAS[d] * cols + COL_DELTAS[d];
+        }
+        this.lengths = new int[rows * cols * DIRECTIONS];
+        for (int row=0; row<rows; ++row) {
+            for (int col=0; col<cols; ++col) {
+                for (int d=0; d<DIRECTIONS; ++d) {
+                    int down = ROW_DELTAS[d] > 0 ? rows - 1 - row
+                            : ROW_DELTAS[d] < 0 ? row : Integer.MAX_VALUE;
+                    int across = COL_DELTAS[d] > 0 ? cols - 1 - col
+                            : COL_DELTAS[d] < 0 ? col : Integer.MAX_VALUE;
+                    this.lengths[(row * cols + col) * DIRECTIONS + d] = Math.min(down, across);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the change in square number of a step in a direction.
+     *
+     * @param direction the direction, from 0 to {@link #DIRECTIONS}-1
+     * @return the step
+     */
+    public int step(int direction) {
+        return this.steps[direction];
+    }
+
+    /**
+     * Get how many steps can be taken from a square in a direction before
+     * leaving the board.
+     *
+     * @param square the square, packed as <tt>row*cols+col</tt>
+     * @param direction the direction, from 0 to {@link #DIRECTIONS}-1
+     * @return the number of squares on the ray, not counting the square
+     * itself
+     */
+    public int length(int square, int direction) {
+        return this.lengths[square * DIRECTIONS + direction];
+    }
+}
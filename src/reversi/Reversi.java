@@ -1,5 +1,7 @@
 package reversi;
 
+import java.util.Arrays;
+
 /**
  * Implementation of the game board representation and move making for
  * Reversi.
@@ -11,6 +13,16 @@ public class Reversi {
     /** The default board size is 8x8 */
     public final static int DIM = 8;
 
+    /** The smallest number of rows or columns that fits the starting discs */
+    public final static int MIN_DIM = 2;
+
+    /**
+     * The largest number of rows or columns a server will play on, so that
+     * a square packed as <tt>row*cols+col</tt> fits in 16 bits and a
+     * dimension fits in the one byte the game log gives it
+     */
+    public final static int MAX_DIM = 255;
+
     /**
      * Used to indicate a move that has been made on the board.
      */
@@ -30,16 +42,79 @@ public class Reversi {
         }
     }
 
+    /**
+     * How the squares of a board are stored.
+     */
+    public enum Layout {
+        /** a {@link Move} for every square, for any board size */
+        ARRAY,
+        /** a 64 bit word per player, for the {@link #DIM}x{@link #DIM} board only */
+        BITBOARD,
+        /** a multi-word bitset per player, for any board size */
+        BITSET,
+        /**
+         * a {@link Move} for every square, walked with a {@link Rays} table
+         * instead of bounds checks, for any board size
+         */
+        RAYS
+    }
+
+    /**
+     * Which moves are legal.
+     */
+    public enum Rules {
+        /**
+         * a move needs only an occupied neighbor, even if it flips nothing,
+         * so there is always a move until the board is full
+         */
+        RELAXED,
+        /**
+         * the official rules: a move must flip at least one disc, a player
+         * with no such move passes, and the game ends when neither player
+         * can move
+         */
+        STRICT
+    }
+
+    /** what {@link #plyMoves} holds for a pass */
+    private static final int PASS = -1;
+
     /** number of rows in board */
     private int rows;
     /** number of columns in board */
     private int cols;
     /** the board */
-    private Move[][] board;
+    private BoardEngine board;
+    /** which moves are legal */
+    private Rules rules;
     /** which player's turn is it? */
     private boolean p1Turn;
     /** how many valid moves have been made? */
     private int numMoves;
+    /** how many discs player one has on the board */
+    private int p1Discs;
+    /** how many discs player two has on the board */
+    private int p2Discs;
+
+    /**
+     * The squares of every disc flipped so far, packed as
+     * <tt>row*cols+col</tt>, one ply after another.
+     */
+    private int[] flipStack;
+    /** how much of the flip stack is in use */
+    private int flipTop;
+    /** the packed square played at each ply, or {@link #PASS} */
+    private int[] plyMoves;
+    /** where each ply's flips start in the flip stack */
+    private int[] plyFlips;
+    /** how many plies have been played, and so can be unmade */
+    private int plies;
+
+    /** {@link Zobrist} hash of the position, kept up to date move by move */
+    private long hash;
+
+    /** scratch space for checking whether a player can move */
+    private int[] scratch;
 
     /**
      * Default construct an 8x8 board.
@@ -49,7 +124,9 @@ public class Reversi {
     }
 
     /**
-     * Construct a board of a specified size.
+     * Construct a board of a specified size.  The standard
+     * {@link #DIM}x{@link #DIM} board is kept as a pair of bitboards,
+     * any other size as a pair of multi-word bitsets.
      *
      * @param rows number of rows
      * @param cols number of columns
@@ -57,24 +134,118 @@ public class Reversi {
      * @rit.pre the board dimensions cannot be smaller than 2x2
      */
     public Reversi(int rows, int cols) {
-        // initialize all spots on the board to empty
-        this.board = new Move[rows][cols];
-        for (int row=0; row<rows; ++row) {
-            for (int col=0; col<cols; ++col) {
-                this.board[row][col] = Move.NONE;
-            }
+        this(rows, cols, Rules.RELAXED);
+    }
+
+    /**
+     * Construct a board of a specified size, played under particular
+     * rules.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param rules which moves are legal
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2
+     */
+    public Reversi(int rows, int cols, Rules rules) {
+        this(rows, cols, rows == DIM && cols == DIM ? Layout.BITBOARD : Layout.BITSET, rules);
+    }
+
+    /**
+     * Construct a board of a specified size, stored in a particular way.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param layout how to store the squares
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2
+     * @throws IllegalArgumentException if a {@link Layout#BITBOARD} board
+     * is not {@link #DIM}x{@link #DIM}
+     */
+    public Reversi(int rows, int cols, Layout layout) {
+        this(rows, cols, layout, Rules.RELAXED);
+    }
+
+    /**
+     * Construct a board of a specified size, stored in a particular way
+     * and played under particular rules.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param layout how to store the squares
+     * @param rules which moves are legal
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2
+     * @throws IllegalArgumentException if a {@link Layout#BITBOARD} board
+     * is not {@link #DIM}x{@link #DIM}
+     */
+    public Reversi(int rows, int cols, Layout layout, Rules rules) {
+        // all spots on a new board are empty
+        switch (layout) {
+            case BITBOARD:
+                if (rows != DIM || cols != DIM) {
+                    throw new IllegalArgumentException("Bitboards must be " + DIM + "x" + DIM);
+                }
+                this.board = new Bitboard();
+                break;
+            case BITSET:
+                this.board = new BitsetBoard(rows, cols);
+                break;
+            case RAYS:
+                this.board = new RayBoard(rows, cols);
+                break;
+            default:
+                this.board = new ArrayBoard(rows, cols);
         }
         // populate the center of the board with pieces
-        this.board[rows/2-1][cols/2-1] = Move.PLAYER_ONE;
-        this.board[rows/2][rows/2] = Move.PLAYER_ONE;
-        this.board[rows/2-1][cols/2] = Move.PLAYER_TWO;
-        this.board[rows/2][cols/2-1] = Move.PLAYER_TWO;
+        this.board.set(rows/2-1, cols/2-1, Move.PLAYER_ONE);
+        this.board.set(rows/2, cols/2, Move.PLAYER_ONE);
+        this.board.set(rows/2-1, cols/2, Move.PLAYER_TWO);
+        this.board.set(rows/2, cols/2-1, Move.PLAYER_TWO);
 
         // finishing setting up all instance data
         this.rows = rows;
         this.cols = cols;
+        this.rules = rules;
         this.p1Turn = true;
         this.numMoves = 4;
+        this.p1Discs = 2;
+        this.p2Discs = 2;
+        this.flipStack = new int[rows * cols * 2];
+        this.flipTop = 0;
+        // every move but the last can be followed by a pass
+        this.plyMoves = new int[rows * cols * 2];
+        this.plyFlips = new int[rows * cols * 2];
+        this.plies = 0;
+        this.hash = Zobrist.disc((rows/2-1) * cols + cols/2-1, true)
+                ^ Zobrist.disc((rows/2) * cols + cols/2, true)
+                ^ Zobrist.disc((rows/2-1) * cols + cols/2, false)
+                ^ Zobrist.disc((rows/2) * cols + cols/2-1, false);
+        this.scratch = new int[rows * cols];
+    }
+
+    /**
+     * Copy a board, including its move history, so that the copy can be
+     * played on (or moves unmade) without affecting the original.
+     *
+     * @param other the board to copy
+     */
+    public Reversi(Reversi other) {
+        this.board = other.board.copy();
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.rules = other.rules;
+        this.p1Turn = other.p1Turn;
+        this.numMoves = other.numMoves;
+        this.p1Discs = other.p1Discs;
+        this.p2Discs = other.p2Discs;
+        this.flipStack = other.flipStack.clone();
+        this.flipTop = other.flipTop;
+        this.plyMoves = other.plyMoves.clone();
+        this.plyFlips = other.plyFlips.clone();
+        this.plies = other.plies;
+        this.hash = other.hash;
+        this.scratch = new int[this.rows * this.cols];
     }
 
     /**
@@ -96,74 +267,106 @@ public class Reversi {
     }
 
     /**
-     * Check that there is an occupied neighbor - we relax the official rules
-     * here that say the neighbor must be the same color.
+     * Get the rules the game is played under.
      *
-     * @param row the row
-     * @param col the column
-     * @return whether there is an occupied neighbor or not
+     * @return which moves are legal
      */
-    private boolean occupiedNeighbor(int row, int col) {
-        // scan through all neighbors and see if there is at least one that is occupied
-        for (int r=row-1; r<=row+1; ++r) {
-            for (int c=col-1; c<=col+1; ++c) {
-                if (!(r == row && c == col)) {
-                    if (r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
-                            this.board[r][c] != Move.NONE) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+    public Rules getRules() {
+        return this.rules;
     }
 
     /**
-     * When a new valid move is made, this helper routine flips all the pieces
-     * on the board that are affected.
+     * What is at this square?
      *
      * @param row the row
      * @param col the column
+     * @return the player (or {@link Move#NONE}) at the given location
      */
-    private void flipPieces(int row, int col) {
-        // figure out who made the move and who the other player is
-        Move me = this.board[row][col];
-        Move other = me == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
-
-        // generate row and column deltas [-1, 0, +1] to check the eight directions
-        // on the board.  this code comes courtesy of a port of python code from
-        // the great and mighty oracle himself, Jim. <3
-        for (int rd=-1; rd<=1; ++rd) {
-            for (int cd=-1; cd<=1; ++cd) {
-                if (rd == 0 && cd == 0) {
-                    continue;
-                }
+    public Move getContents(int row, int col) {
+        return this.board.get(row, col);
+    }
 
-                int r = row + rd;
-                int c = col + cd;
+    /**
+     * Whose turn is it?
+     *
+     * @return {@link Move#PLAYER_ONE} or {@link Move#PLAYER_TWO}
+     */
+    public Move getTurn() {
+        return this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+    }
 
-                // Continue in the current direction until we go off the end of the
-                // board or we reach a square that does not contain an opponent's disc.
-                while (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == other) {
-                    r += rd;
-                    c += cd;
-                }
+    /**
+     * Get a 64 bit {@link Zobrist} hash of the position, including whose
+     * turn it is.  It is kept up to date as moves are made and unmade, so
+     * this costs nothing.
+     *
+     * @return the hash
+     */
+    public long getHash() {
+        return this.hash;
+    }
 
-                // If we did not go off the board and the square we stopped on
-                // contains one of this player's discs, flips the ones in between.
-                if (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == me) {
-                    // restart
-                    r = row + rd;
-                    c = col + cd;
-
-                    while (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == other) {
-                        this.board[r][c] = me;
-                        r += rd;
-                        c += cd;
-                    }
-                }
-            }
+    /**
+     * Find every square where the player whose turn it is may move.  Each
+     * square is packed into a single int as <tt>row*getCols()+col</tt>.
+     * Under the {@link Rules#STRICT strict rules} there may be none, in
+     * which case the player must {@link #pass()}.<P>
+     *
+     * Nothing is allocated, so bots can call this as often as they like
+     * with the same array.
+     *
+     * @param moves where to put the moves; it must hold at least
+     *              <tt>getRows()*getCols()</tt> entries
+     * @return how many moves were written to the front of the array
+     */
+    public int legalMoves(int[] moves) {
+        if (this.rules == Rules.STRICT) {
+            return this.board.flippingMoves(moves, getTurn());
+        }
+        return this.board.legalMoves(moves);
+    }
+
+    /**
+     * Can a player move, under the strict rules?
+     *
+     * @param player who is asking
+     * @return whether the player has a move that flips something
+     */
+    private boolean canMove(Move player) {
+        return this.board.flippingMoves(this.scratch, player) > 0;
+    }
+
+    /**
+     * Must the player whose turn it is pass?  That only happens under the
+     * {@link Rules#STRICT strict rules}, when the player has no legal move
+     * but the other player does.
+     *
+     * @return whether the player must pass
+     */
+    public boolean mustPass() {
+        if (this.rules != Rules.STRICT || this.numMoves == this.rows * this.cols) {
+            return false;
+        }
+        return !canMove(getTurn()) &&
+                canMove(this.p1Turn ? Move.PLAYER_TWO : Move.PLAYER_ONE);
+    }
+
+    /**
+     * Pass the turn to the other player without moving.  A pass is a ply
+     * of its own, so it can be unmade like any move.
+     *
+     * @throws ReversiException if the player is not {@link #mustPass()
+     * obliged to pass}
+     */
+    public void pass() throws ReversiException {
+        if (!mustPass()) {
+            throw new ReversiException("Cannot pass");
         }
+        this.plyMoves[this.plies] = PASS;
+        this.plyFlips[this.plies] = this.flipTop;
+        ++this.plies;
+        this.hash ^= Zobrist.SIDE;
+        this.p1Turn = !this.p1Turn;
     }
 
     /**
@@ -180,31 +383,175 @@ public class Reversi {
             throw new ReversiException("Invalid row: " + row);
         } else if (col < 0 || col >= this.cols) {
             throw new ReversiException("Invalid column: " + col);
-        } else if (this.board[row][col] != Move.NONE) {
+        } else if (this.board.get(row, col) != Move.NONE) {
             throw new ReversiException("Cell occupied: " + "(" + row + ", " + col + ")");
         } else {
-            if (!occupiedNeighbor(row, col)) {
+            // the relaxed rules say nothing about the neighbor's color
+            if (!this.board.occupiedNeighbor(row, col)) {
                 throw new ReversiException("No neighbor: " + "(" + row + ", " + col + ")");
+            } else if (this.rules == Rules.STRICT && !this.board.wouldFlip(row, col, getTurn())) {
+                throw new ReversiException("No discs flipped: " + "(" + row + ", " + col + ")");
             }
         }
 
+        // a single move can flip at most one disc per square
+        if (this.flipTop + this.rows * this.cols > this.flipStack.length) {
+            this.flipStack = Arrays.copyOf(this.flipStack, this.flipStack.length * 2);
+        }
+        this.plyMoves[this.plies] = row * this.cols + col;
+        this.plyFlips[this.plies] = this.flipTop;
+        ++this.plies;
+
         // place piece on board
         ++this.numMoves;
-        this.board[row][col] = this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+        this.board.set(row, col, this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO);
 
-        // flip opposite neighbors
-        flipPieces(row, col);
+        // flip opposite neighbors, which move from one player's count to the other's
+        int flipped = this.board.flipPieces(row, col, this.flipStack, this.flipTop);
+        updateHash(row * this.cols + col, this.p1Turn, this.flipTop, this.flipTop + flipped);
+        this.flipTop += flipped;
+        if (this.p1Turn) {
+            this.p1Discs += 1 + flipped;
+            this.p2Discs -= flipped;
+        } else {
+            this.p2Discs += 1 + flipped;
+            this.p1Discs -= flipped;
+        }
 
         this.p1Turn = !this.p1Turn;
     }
 
     /**
-     * Check to see if the game is over (board is filled)
+     * Find every move made so far, in order, packed as
+     * <tt>row*getCols()+col</tt>.  Passes are left out; under the strict
+     * rules they can be worked out again from the moves.
+     *
+     * @param squares where to put the moves; it must hold at least
+     *                <tt>getRows()*getCols()</tt> entries
+     * @return how many moves were written to the front of the array
+     */
+    public int getMoves(int[] squares) {
+        int n = 0;
+        for (int i=0; i<this.plies; ++i) {
+            if (this.plyMoves[i] != PASS) {
+                squares[n++] = this.plyMoves[i];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Find the discs flipped by the most recent move, packed as
+     * <tt>row*getCols()+col</tt>.  Servers send these to clients so that
+     * they need not work the flips out again.
+     *
+     * @param squares where to put the squares; it must hold at least
+     *                <tt>getRows()*getCols()</tt> entries
+     * @return how many squares were written to the front of the array,
+     * or 0 if no move has been made or the last ply was a pass
+     */
+    public int lastFlips(int[] squares) {
+        if (this.plies == 0) {
+            return 0;
+        }
+        int start = this.plyFlips[this.plies - 1];
+        System.arraycopy(this.flipStack, start, squares, 0, this.flipTop - start);
+        return this.flipTop - start;
+    }
+
+    /**
+     * Add (or, since XOR undoes itself, remove) a ply's changes to the hash:
+     * the disc placed, the discs flipped and the change of turn.
+     *
+     * @param square the packed square played
+     * @param playerOne whether player one made the move
+     * @param from where the ply's flips start in the flip stack
+     * @param to where they end
+     */
+    private void updateHash(int square, boolean playerOne, int from, int to) {
+        long h = this.hash ^ Zobrist.disc(square, playerOne) ^ Zobrist.SIDE;
+        for (int i=from; i<to; ++i) {
+            h ^= Zobrist.flip(this.flipStack[i]);
+        }
+        this.hash = h;
+    }
+
+    /**
+     * Take back the most recent move or pass, restoring the board, the
+     * disc counts and whose turn it is.  The flipped discs come off the
+     * flip stack, so nothing is copied or allocated; search code can make
+     * and unmake moves on a single board.
+     *
+     * @throws ReversiException if no moves have been made
+     */
+    public void unmakeMove() throws ReversiException {
+        if (this.plies == 0) {
+            throw new ReversiException("No move to unmake");
+        }
+        --this.plies;
+        this.p1Turn = !this.p1Turn;
+        if (this.plyMoves[this.plies] == PASS) {
+            this.hash ^= Zobrist.SIDE;
+            return;
+        }
+        Move me = this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+        Move other = this.p1Turn ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+
+        // give the flipped discs back to the other player
+        int start = this.plyFlips[this.plies];
+        for (int i=start; i<this.flipTop; ++i) {
+            int square = this.flipStack[i];
+            this.board.set(square / this.cols, square % this.cols, other);
+        }
+        int flipped = this.flipTop - start;
+
+        // and take the piece back off the board
+        int square = this.plyMoves[this.plies];
+        this.board.set(square / this.cols, square % this.cols, Move.NONE);
+        --this.numMoves;
+
+        updateHash(square, this.p1Turn, start, this.flipTop);
+        this.flipTop = start;
+
+        if (me == Move.PLAYER_ONE) {
+            this.p1Discs -= 1 + flipped;
+            this.p2Discs += flipped;
+        } else {
+            this.p2Discs -= 1 + flipped;
+            this.p1Discs += flipped;
+        }
+    }
+
+    /**
+     * Check to see if the game is over: the board is filled or, under the
+     * {@link Rules#STRICT strict rules}, neither player can move.
      *
      * @return whether the game is over or not
      */
     public boolean gameOver() {
-        return this.numMoves == this.rows * this.cols;
+        if (this.numMoves == this.rows * this.cols) {
+            return true;
+        }
+        return this.rules == Rules.STRICT && !canMove(getTurn()) &&
+                !canMove(this.p1Turn ? Move.PLAYER_TWO : Move.PLAYER_ONE);
+    }
+
+    /**
+     * Get the number of discs a player currently has on the board.
+     *
+     * @param player {@link Move#PLAYER_ONE} or {@link Move#PLAYER_TWO}
+     * @return the player's disc count, or the number of empty squares for
+     * {@link Move#NONE}
+     */
+    public int getScore(Move player) {
+        switch (player) {
+            case PLAYER_ONE:
+                return this.p1Discs;
+            case PLAYER_TWO:
+                return this.p2Discs;
+            default:
+                return this.rows * this.cols - this.p1Discs - this.p2Discs;
+        }
     }
 
     /**
@@ -214,23 +561,10 @@ public class Reversi {
      * @return The winner.
      */
     public Move getWinner() {
-        // count the disks for each player
-        int p1Disks = 0;
-        int p2Disks = 0;
-        for (int row=0; row<this.rows; ++row) {
-            for (int col=0; col<this.cols; ++col) {
-                if (this.board[row][col] == Move.PLAYER_ONE) {
-                    ++p1Disks;
-                } else {
-                    ++p2Disks;
-                }
-            }
-        }
-
-        // determine winner
-        if (p1Disks == p2Disks) {
+        // determine winner from the running disc counts
+        if (this.p1Discs == this.p2Discs) {
             return Move.NONE;
-        } else if (p1Disks > p2Disks) {
+        } else if (this.p1Discs > this.p2Discs) {
             return Move.PLAYER_ONE;
         } else {
             return Move.PLAYER_TWO;
@@ -265,7 +599,7 @@ public class Reversi {
             builder.append(r);
             for(int c=0; c<this.cols; ++c) {
                 builder.append('[');
-                builder.append(this.board[r][c].getSymbol());
+                builder.append(this.board.get(r, c).getSymbol());
                 builder.append(']');
             }
             builder.append('\n');
@@ -8,7 +8,8 @@ package reversi;
  * Changes suggested for the future by JEH
  * <ul>
  *     <li>Include player no. in the MOVE messages.</li>
- *     <li>Instead of reporting a player's move, report board updates.</li>
+ *     <li>Instead of reporting a player's move, report board updates.
+ *     (Done for binary clients: see {@link BinaryProtocol#OP_BOARD_DELTA}.)</li>
  *     <li>This includes initial setup moves.</li>
  * </ul>
  *
@@ -23,10 +24,48 @@ public interface ReversiProtocol {
      * understands the {@link ReversiProtocol protocol}.  The dimensions
      * of the board are sent in the request.<P>
      *
-     *  For example if there were 6 rows and 7 columns: CONNECT 6 7\n
+     *  For example if there were 6 rows and 7 columns: CONNECT 6 7\n<P>
+     *
+     *  A game played under the official rules ends the request with
+     *  {@link #STRICT}, for example: CONNECT 8 8 STRICT\n
      */
     public static final String CONNECT = "CONNECT";
 
+    /**
+     * Added to the end of the {@link #CONNECT} request when the game is
+     * played under the official rules: a move must flip at least one disc,
+     * a player who cannot move has to {@link #PASS}, and the game ends when
+     * neither player can move.  Without it any empty square with an
+     * occupied neighbor may be played.
+     */
+    public static final String STRICT = "STRICT";
+
+    /**
+     * Request sent from the client to a matchmaking reversi.server right after
+     * opening its connection, before the {@link #CONNECT} request.  It gives
+     * the player's rating and, optionally, the board size the player would
+     * like; the server's default size is used if it is left out.  The server
+     * sends {@link #CONNECT} once an opponent has been found.<P>
+     *
+     * For example (rating 1500 on a 16x16 board): JOIN 1500 16 16\n
+     */
+    public static final String JOIN = "JOIN";
+
+    /**
+     * Request sent from a spectator to a matchmaking reversi.server, instead
+     * of {@link #JOIN}, to watch a game that is being played.  It gives the
+     * number of the game, or nothing to watch the game with the highest
+     * rated players.  The server answers with {@link #CONNECT} and a
+     * {@link #MOVE_MADE} for every move made so far, and then sends each
+     * move as it is made.  The game ends with {@link #GAME_WON} and the
+     * winning player's number, {@link #GAME_TIED} or {@link #ERROR}.  A
+     * spectator never sends anything else, and one that falls too far
+     * behind is disconnected.<P>
+     *
+     * For example (to watch game 12): WATCH 12\n
+     */
+    public static final String WATCH = "WATCH";
+
     /**
      * Request sent from the reversi.server to the client when it is the client's turn
      * to make a move.
@@ -50,6 +89,14 @@ public interface ReversiProtocol {
      */
     public static final String MOVE_MADE = "MOVE_MADE";
 
+    /**
+     * Request sent from the reversi.server to the client, in a
+     * {@link #STRICT} game, when the player whose turn it is has no legal
+     * move.  The player passes without moving, and the other player moves
+     * again.
+     */
+    public static final String PASS = "PASS";
+
     /**
      * Request sent from the reversi.server to the client when the client has won the
      * game.
@@ -0,0 +1,58 @@
+package reversi;
+
+/**
+ * Keys for Zobrist hashing of Reversi positions.  The hash of a position
+ * is the XOR of one key per disc on the board (picked by square and color)
+ * and, when it is player two's turn, {@link #SIDE}.  Because XOR undoes
+ * itself, a board can keep its hash up to date as discs are placed and
+ * flipped instead of hashing every square again.<P>
+ *
+ * The keys are mixed from the square number on demand rather than looked
+ * up in a table, so they cost no memory and work for any board size.
+ * Squares are numbered <tt>row*cols+col</tt>.
+ */
+public final class Zobrist {
+    /** key mixed in when it is player two's turn */
+    public static final long SIDE = mix(-1L);
+
+    /**
+     * No instances; the keys are all static.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Scramble a number into a well distributed 64 bit key (one step of
+     * SplitMix64: add its golden ratio increment, then its finalizer).
+     *
+     * @param x the number
+     * @return the key
+     */
+    private static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Get the key for a disc on a square.
+     *
+     * @param square the square, packed as <tt>row*cols+col</tt>
+     * @param playerOne whether the disc is player one's
+     * @return the key
+     */
+    public static long disc(int square, boolean playerOne) {
+        return mix(2L * square + (playerOne ? 0 : 1));
+    }
+
+    /**
+     * Get the change in hash when the disc on a square changes color.
+     *
+     * @param square the square, packed as <tt>row*cols+col</tt>
+     * @return the key of player one's disc there XORed with player two's
+     */
+    public static long flip(int square) {
+        return disc(square, true) ^ disc(square, false);
+    }
+}
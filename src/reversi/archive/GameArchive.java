@@ -0,0 +1,365 @@
+package reversi.archive;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the games in one or more {@link GameLog} files.  The files are
+ * memory-mapped, in segments of up to {@link #MAX_SEGMENT} bytes that end
+ * on a record boundary, and opening them builds an index of where each
+ * record starts: four bytes per game.  A game's id is its position in the
+ * archive, counting from 0 across all the files in the order given.<P>
+ *
+ * A {@link Game} is a view onto the mapped bytes; nothing is copied out
+ * of the file until it is asked for, and {@link Game#replay()} feeds the
+ * moves straight from the mapping into a {@link Reversi}.  A scan with
+ * {@link #forEach} reuses a single view, so it reads the archive in file
+ * order at whatever speed the disk can manage.<P>
+ *
+ * A record cut short at the end of a file, as a crash in the middle of a
+ * write would leave, is left out.  {@link GameLog} cuts it off when it
+ * next opens the file, so games logged after the crash follow on from
+ * the last complete record.
+ */
+public class GameArchive implements Closeable {
+    /** the most bytes mapped at once */
+    private static final long MAX_SEGMENT = 1L << 30;
+
+    /** offset of each field in a record, from the start of its length */
+    private static final int TIME = 4, ROWS = 12, COLS = 13, RESULT = 14,
+            MOVES = 15, IDS = 17;
+
+    /** the open files */
+    private List<FileChannel> channels = new ArrayList<>();
+    /** the mapped segments, in order */
+    private List<Segment> segments = new ArrayList<>();
+    /** how many games there are */
+    private long size;
+
+    /**
+     * A mapped part of a file and where each of its records starts.
+     */
+    private static class Segment {
+        /** the mapped bytes */
+        private ByteBuffer bytes;
+        /** the id of the first game in the segment */
+        private long first;
+        /** where each record starts in {@link #bytes} */
+        private int[] offsets = new int[1024];
+        /** how many records there are */
+        private int count;
+
+        /**
+         * Create a segment.
+         *
+         * @param bytes the mapped bytes
+         * @param first the id of its first game
+         */
+        Segment(ByteBuffer bytes, long first) {
+            this.bytes = bytes;
+            this.first = first;
+        }
+    }
+
+    /**
+     * A game in the archive.  It reads the mapped bytes directly, so it is
+     * only good while the archive is open.
+     */
+    public static class Game {
+        /** the segment holding the game */
+        private ByteBuffer bytes;
+        /** where the game's record starts */
+        private int offset;
+        /** where the moves start */
+        private int moves;
+
+        /**
+         * Point the view at a record.
+         *
+         * @param bytes the segment
+         * @param offset where the record starts
+         */
+        private void at(ByteBuffer bytes, int offset) {
+            this.bytes = bytes;
+            this.offset = offset;
+            int one = Short.toUnsignedInt(bytes.getShort(offset + IDS));
+            int two = Short.toUnsignedInt(bytes.getShort(offset + IDS + 2 + one));
+            this.moves = offset + IDS + 2 + one + 2 + two;
+        }
+
+        /**
+         * When did the game end?
+         *
+         * @return the time, in milliseconds since the epoch
+         */
+        public long getTime() {
+            return this.bytes.getLong(this.offset + TIME);
+        }
+
+        /**
+         * Get the number of rows in the board.
+         *
+         * @return number of rows
+         */
+        public int getRows() {
+            return Byte.toUnsignedInt(this.bytes.get(this.offset + ROWS));
+        }
+
+        /**
+         * Get the number of columns in the board.
+         *
+         * @return number of columns
+         */
+        public int getCols() {
+            return Byte.toUnsignedInt(this.bytes.get(this.offset + COLS));
+        }
+
+        /**
+         * How did the game end?
+         *
+         * @return the result, such as {@link GameLog#PLAYER_ONE_WON}
+         */
+        public int getResult() {
+            return Byte.toUnsignedInt(this.bytes.get(this.offset + RESULT)) & ~GameLog.STRICT;
+        }
+
+        /**
+         * Get the rules the game was played under.
+         *
+         * @return which moves were legal
+         */
+        public Reversi.Rules getRules() {
+            return (this.bytes.get(this.offset + RESULT) & GameLog.STRICT) != 0 ?
+                    Reversi.Rules.STRICT : Reversi.Rules.RELAXED;
+        }
+
+        /**
+         * How many moves were made?
+         *
+         * @return the number of moves
+         */
+        public int getMoveCount() {
+            return Short.toUnsignedInt(this.bytes.getShort(this.offset + MOVES));
+        }
+
+        /**
+         * Get one of the moves.
+         *
+         * @param i which move, counting from 0
+         * @rit.pre i &lt; {@link #getMoveCount()}
+         * @return the move, packed as <tt>row*getCols()+col</tt>
+         */
+        public int getMove(int i) {
+            return getRows() * getCols() <= 256 ?
+                    Byte.toUnsignedInt(this.bytes.get(this.moves + i)) :
+                    Short.toUnsignedInt(this.bytes.getShort(this.moves + 2 * i));
+        }
+
+        /**
+         * Get player one's id.
+         *
+         * @return the id
+         */
+        public String getPlayerOne() {
+            return id(this.offset + IDS);
+        }
+
+        /**
+         * Get player two's id.
+         *
+         * @return the id
+         */
+        public String getPlayerTwo() {
+            int one = Short.toUnsignedInt(this.bytes.getShort(this.offset + IDS));
+            return id(this.offset + IDS + 2 + one);
+        }
+
+        /**
+         * Decode an id.
+         *
+         * @param at where its length is
+         * @return the id
+         */
+        private String id(int at) {
+            byte[] id = new byte[Short.toUnsignedInt(this.bytes.getShort(at))];
+            for (int i=0; i<id.length; ++i) {
+                id[i] = this.bytes.get(at + 2 + i);
+            }
+            return new String(id, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Play the game's moves on a new board.  Under the strict rules,
+         * the passes the record leaves out are put back in.
+         *
+         * @return the board as it was at the end of the game
+         * @throws ReversiException if the record holds a move that is not
+         * valid
+         */
+        public Reversi replay() throws ReversiException {
+            int rows = getRows();
+            int cols = getCols();
+            Reversi game = new Reversi(rows, cols, getRules());
+            int count = getMoveCount();
+            boolean small = rows * cols <= 256;
+            for (int i=0; i<count; ++i) {
+                int square = small ?
+                        Byte.toUnsignedInt(this.bytes.get(this.moves + i)) :
+                        Short.toUnsignedInt(this.bytes.getShort(this.moves + 2 * i));
+                if (game.mustPass()) {
+                    game.pass();
+                }
+                game.makeMove(square / cols, square % cols);
+            }
+            return game;
+        }
+    }
+
+    /**
+     * Open an archive of game logs and index their games.
+     *
+     * @param paths the log files, in order
+     * @throws ReversiException if a file cannot be read, or is not a game
+     * log
+     */
+    public GameArchive(Path... paths) throws ReversiException {
+        try {
+            for (Path path : paths) {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                this.channels.add(channel);
+                index(channel, path);
+            }
+        } catch (IOException e) {
+            close();
+            throw new ReversiException(e);
+        }
+    }
+
+    /**
+     * Map a file and index its records.
+     *
+     * @param channel the file
+     * @param path the file's name, for errors
+     * @throws IOException if the file cannot be read
+     * @throws ReversiException if it is not a game log
+     */
+    private void index(FileChannel channel, Path path) throws IOException, ReversiException {
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < 8 || header.getInt() != GameLog.MAGIC ||
+                header.getInt() != GameLog.VERSION) {
+            close();
+            throw new ReversiException("Not a game log: " + path);
+        }
+
+        long position = 8;
+        while (position < length) {
+            int mapped = (int) Math.min(MAX_SEGMENT, length - position);
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+            Segment segment = new Segment(bytes, this.size);
+            int offset = 0;
+            while (offset + 4 <= mapped) {
+                int record = bytes.getInt(offset);
+                if (record < IDS || (long) offset + 4 + record > mapped) {
+                    break;
+                }
+                if (segment.count == segment.offsets.length) {
+                    segment.offsets = Arrays.copyOf(segment.offsets, segment.count * 2);
+                }
+                segment.offsets[segment.count++] = offset;
+                offset += 4 + record;
+            }
+            if (segment.count == 0) {
+                // only a torn record is left
+                break;
+            }
+            this.segments.add(segment);
+            this.size += segment.count;
+            position += offset;
+        }
+    }
+
+    /**
+     * How many games are in the archive?
+     *
+     * @return the number of games
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Get a game by its id.
+     *
+     * @param id the game's position in the archive
+     * @return a view of the game
+     * @throws IndexOutOfBoundsException if there is no such game
+     */
+    public Game get(long id) {
+        if (id < 0 || id >= this.size) {
+            throw new IndexOutOfBoundsException("No game " + id);
+        }
+        // find the last segment that starts at or before the game
+        int low = 0;
+        int high = this.segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (this.segments.get(mid).first <= id) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        Segment segment = this.segments.get(low);
+        Game game = new Game();
+        game.at(segment.bytes, segment.offsets[(int) (id - segment.first)]);
+        return game;
+    }
+
+    /**
+     * Look at every game in order.  The same view is moved from game to
+     * game, so it must not be kept.
+     *
+     * @param action what to do with each game
+     */
+    public void forEach(Consumer<Game> action) {
+        Game game = new Game();
+        for (Segment segment : this.segments) {
+            for (int i=0; i<segment.count; ++i) {
+                game.at(segment.bytes, segment.offsets[i]);
+                action.accept(game);
+            }
+        }
+    }
+
+    /**
+     * Closes the files.  The mappings go when they are garbage collected.
+     */
+    @Override
+    public void close() {
+        for (FileChannel channel : this.channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // squash
+            }
+        }
+        this.segments.clear();
+        this.size = 0;
+    }
+}
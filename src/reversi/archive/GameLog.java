@@ -0,0 +1,317 @@
+package reversi.archive;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An append-only file of finished games.  {@link #log} encodes a game and
+ * queues it without waiting; a background thread takes whatever has
+ * queued up and writes it to a {@link FileChannel} in one go, so games
+ * never wait on the disk, and a busy server makes few large writes rather
+ * than many small ones.<P>
+ *
+ * The file starts with {@link #MAGIC} and {@link #VERSION}, four bytes
+ * each.  Then come the records, one per game, with every number
+ * big-endian:
+ * <pre>
+ *   int    length of the rest of the record, in bytes
+ *   long   when the game ended, in milliseconds since the epoch
+ *   byte   rows (unsigned, so boards may be up to 255x255)
+ *   byte   columns
+ *   byte   result: {@link #TIED}, {@link #PLAYER_ONE_WON},
+ *          {@link #PLAYER_TWO_WON} or {@link #UNFINISHED}, plus
+ *          {@link #STRICT} if the game was played under the strict rules
+ *   short  number of moves
+ *   short  length of player one's id, then its bytes in UTF-8
+ *   short  length of player two's id, then its bytes in UTF-8
+ *          the moves, each packed as row*columns+col, in one byte
+ *          each if the board has at most 256 squares, otherwise two
+ * </pre>
+ * An 8x8 game with short ids takes under 100 bytes.  If the disk cannot
+ * keep up and {@link #MAX_QUEUED} games are waiting, further games are
+ * dropped and counted rather than holding up the games being played.
+ *
+ * @see GameArchive
+ */
+public class GameLog implements Closeable, Runnable {
+    /** the first four bytes of a log file: "RVLG" */
+    public static final int MAGIC = 0x52564C47;
+    /** the version of the record format */
+    public static final int VERSION = 1;
+
+    /** result of a tied game */
+    public static final int TIED = 0;
+    /** result of a game player one won */
+    public static final int PLAYER_ONE_WON = 1;
+    /** result of a game player two won */
+    public static final int PLAYER_TWO_WON = 2;
+    /** result of a game that ended with an error */
+    public static final int UNFINISHED = 3;
+    /**
+     * added to the result of a game played under the
+     * {@link Reversi.Rules#STRICT strict rules}; passes are not recorded,
+     * since they follow from the moves
+     */
+    public static final int STRICT = 0x80;
+
+    /** how many games may wait to be written */
+    private static final int MAX_QUEUED = 1 << 16;
+
+    /** the length of a record with no ids and no moves */
+    private static final int MIN_RECORD = 8 + 3 + 2 + 2 + 2;
+
+    /** how long {@link #close()} waits at a time for room in the queue */
+    private static final long CLOSE_WAIT_MILLIS = 100;
+
+    /** queued after the last game to stop the writer */
+    private static final byte[] END = new byte[0];
+
+    /** the file */
+    private FileChannel channel;
+    /** encoded games waiting to be written */
+    private BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+    /** the writer's thread */
+    private Thread writer;
+    /** the first failure of the writer, if any */
+    private volatile IOException failure;
+    /** games dropped because the queue was full */
+    private LongAdder dropped = new LongAdder();
+    /** games written */
+    private LongAdder written = new LongAdder();
+
+    /**
+     * Open a log, creating the file if need be, and start the writer.
+     * Games are added after the last complete record the file already
+     * holds; a record cut short by a crash is cut off, so that the games
+     * written after it can be read.
+     *
+     * @param path the file
+     * @throws ReversiException if the file cannot be opened, or is not a
+     * game log
+     */
+    public GameLog(Path path) throws ReversiException {
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ);
+            if (this.channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    this.channel.write(header);
+                }
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                this.channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < 8 || header.getInt() != MAGIC ||
+                        header.getInt() != VERSION) {
+                    this.channel.close();
+                    throw new ReversiException("Not a game log: " + path);
+                }
+            }
+            long end = lastComplete(this.channel);
+            if (end < this.channel.size()) {
+                System.err.println("Game log: dropping a torn record at " + end);
+                this.channel.truncate(end);
+            }
+            this.channel.position(end);
+        } catch (IOException e) {
+            throw new ReversiException(e);
+        }
+        this.writer = new Thread(this, "reversi-game-log");
+        this.writer.start();
+    }
+
+    /**
+     * Find where the last complete record in a log ends.
+     *
+     * @param channel the log, with a good header
+     * @return the position just after the last record whose length and
+     * bytes are all there
+     * @throws IOException if the file cannot be read
+     */
+    private static long lastComplete(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        buffer.limit(0);
+        // the file position of the buffer's first byte
+        long start = 0;
+        long position = 8;
+        while (position + 4 <= size) {
+            if (position + 4 > start + buffer.limit()) {
+                buffer.clear();
+                start = position;
+                while (buffer.hasRemaining() &&
+                        channel.read(buffer, start + buffer.position()) > 0) {
+                    // keep reading
+                }
+                buffer.flip();
+            }
+            int record = buffer.getInt((int) (position - start));
+            if (record < MIN_RECORD || position + 4 + record > size) {
+                break;
+            }
+            position += 4 + record;
+        }
+        return position;
+    }
+
+    /**
+     * Queue a finished game to be written.  This never waits.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param rules the rules the game was played under
+     * @param playerOne player one's id
+     * @param playerTwo player two's id
+     * @param result how the game ended, such as {@link #PLAYER_ONE_WON}
+     * @param moves the moves, packed as <tt>row*cols+col</tt>
+     * @param count how many moves were made
+     * @return whether the game was queued; false if the log is behind or
+     * closed
+     * @throws IllegalArgumentException if the board is bigger than
+     * {@link Reversi#MAX_DIM} either way, which a record cannot hold
+     */
+    public boolean log(int rows, int cols, Reversi.Rules rules, String playerOne,
+                       String playerTwo, int result, int[] moves, int count) {
+        if (rows > Reversi.MAX_DIM || cols > Reversi.MAX_DIM) {
+            throw new IllegalArgumentException("Board too big to log: " + rows + "x" + cols);
+        }
+        byte[] one = playerOne.getBytes(StandardCharsets.UTF_8);
+        byte[] two = playerTwo.getBytes(StandardCharsets.UTF_8);
+        int moveBytes = rows * cols <= 256 ? 1 : 2;
+        ByteBuffer record = ByteBuffer.allocate(4 + 8 + 3 + 2 + 2 + one.length +
+                2 + two.length + count * moveBytes);
+        record.putInt(record.capacity() - 4);
+        record.putLong(System.currentTimeMillis());
+        int flags = rules == Reversi.Rules.STRICT ? result | STRICT : result;
+        record.put((byte) rows).put((byte) cols).put((byte) flags);
+        record.putShort((short) count);
+        record.putShort((short) one.length).put(one);
+        record.putShort((short) two.length).put(two);
+        for (int i=0; i<count; ++i) {
+            if (moveBytes == 1) {
+                record.put((byte) moves[i]);
+            } else {
+                record.putShort((short) moves[i]);
+            }
+        }
+
+        if (this.writer.isAlive() && this.queue.offer(record.array())) {
+            return true;
+        }
+        this.dropped.increment();
+        return false;
+    }
+
+    /**
+     * How many games have been written?
+     *
+     * @return the number written
+     */
+    public long written() {
+        return this.written.sum();
+    }
+
+    /**
+     * How many games could not be queued?
+     *
+     * @return the number dropped
+     */
+    public long dropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Writes games as they are queued, as many at a time as are waiting,
+     * until the log is closed.
+     */
+    @Override
+    public void run() {
+        List<byte[]> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        try {
+            boolean open = true;
+            while (open) {
+                batch.add(this.queue.take());
+                this.queue.drainTo(batch);
+                buffer.clear();
+                for (byte[] record : batch) {
+                    if (record == END) {
+                        open = false;
+                        break;
+                    }
+                    if (buffer.remaining() < record.length) {
+                        write(buffer);
+                        if (buffer.capacity() < record.length) {
+                            buffer = ByteBuffer.allocateDirect(record.length);
+                        }
+                    }
+                    buffer.put(record);
+                    this.written.increment();
+                }
+                write(buffer);
+                batch.clear();
+            }
+            this.channel.force(false);
+        } catch (IOException e) {
+            this.failure = e;
+            System.err.println("Game log failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write out a buffer and empty it.
+     *
+     * @param buffer the buffer, ready to be filled further
+     * @throws IOException if the write fails
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes everything queued, and closes the file.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // a writer that has failed will never make room in the queue
+            while (!this.queue.offer(END, CLOSE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!this.writer.isAlive()) {
+                    break;
+                }
+            }
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.channel.close();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+}
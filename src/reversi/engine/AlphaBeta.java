@@ -0,0 +1,391 @@
+package reversi.engine;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+/**
+ * A computer player that searches {@link Reversi} positions with iterative
+ * deepening negamax alpha-beta and a {@link TranspositionTable}.<P>
+ *
+ * Moves are made and taken back on the caller's board with
+ * {@link Reversi#makeMove(int, int)} and {@link Reversi#unmakeMove()}, and
+ * the per-ply move lists are allocated once, so a search does not allocate.
+ * Each instance has its own table, sized from a memory budget, and every
+ * search stops at a time limit; several bots can share a server without
+ * one of them using up all of its memory or CPU.<P>
+ *
+ * An instance is not thread safe; use one per game, or see
+ * {@link ParallelSearch} to search one game with several threads.
+ */
+public class AlphaBeta {
+    /** a score greater than any evaluation */
+    static final int INFINITY = 1_000_000;
+    /** score for a won game, before adding the disc margin */
+    private static final int WIN = 100_000;
+    /** extra weight of a disc on a corner, which can never be flipped */
+    private static final int CORNER = 25;
+    /** how many nodes to search between looks at the clock */
+    private static final int CLOCK_CHECK = 1024;
+
+    /** table of earlier search results */
+    private TranspositionTable table;
+    /** set if no other searcher uses the table, so this one may clear it */
+    private final boolean ownsTable;
+    /** number of rows in the board being searched */
+    private int rows;
+    /** number of columns in the board being searched */
+    private int cols;
+    /** the rules of the game being searched */
+    private Reversi.Rules rules;
+    /** a move list for each ply */
+    private int[][] moves;
+
+    /** when the current search has to stop, from {@link System#nanoTime()} */
+    private long deadline;
+    /** set once the current search has run out of time */
+    private boolean stopped;
+    /** nodes visited by the most recent search */
+    private long nodes;
+    /** deepest iteration completed by the most recent search */
+    private int depthReached;
+    /**
+     * set if the current iteration scored any position short of the end
+     * of the game, because it ran out of depth
+     */
+    private boolean cutOff;
+    /** best move at the root found by the latest iteration */
+    private int rootMove;
+
+    /**
+     * Create a searcher.
+     *
+     * @param tableBytes memory budget for the transposition table
+     */
+    public AlphaBeta(long tableBytes) {
+        this(new TranspositionTable(tableBytes), true);
+    }
+
+    /**
+     * Create a searcher that uses an existing table, which may be shared
+     * with other searchers.  The searcher never clears the table; whoever
+     * owns it must do that when the board size or rules change.
+     *
+     * @param table the transposition table
+     */
+    public AlphaBeta(TranspositionTable table) {
+        this(table, false);
+    }
+
+    /**
+     * Create a searcher.
+     *
+     * @param table the transposition table
+     * @param ownsTable whether the searcher is the table's only user
+     */
+    private AlphaBeta(TranspositionTable table, boolean ownsTable) {
+        this.table = table;
+        this.ownsTable = ownsTable;
+    }
+
+    /**
+     * Get the number of nodes visited by the most recent search.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Get the deepest iteration the most recent search completed.
+     *
+     * @return the depth
+     */
+    public int getDepthReached() {
+        return this.depthReached;
+    }
+
+    /**
+     * Find the best move for the player whose turn it is.  The board is
+     * searched in place and is back in its original position when this
+     * returns.
+     *
+     * @param game the position to search
+     * @param maxDepth the deepest iteration to search
+     * @param millis how long to search for
+     * @return the best move found, packed as <tt>row*getCols()+col</tt>
+     * @throws ReversiException if the game is over or the player must pass
+     */
+    public int bestMove(Reversi game, int maxDepth, long millis) throws ReversiException {
+        if (game.gameOver()) {
+            throw new ReversiException("Game over");
+        } else if (game.mustPass()) {
+            throw new ReversiException("No move to make");
+        }
+        start(game, System.nanoTime() + millis * 1_000_000L);
+
+        // fall back on the first legal move if not even depth 1 finishes
+        game.legalMoves(this.moves[0]);
+        int best = this.moves[0][0];
+        for (int depth=1; depth<=maxDepth; ++depth) {
+            this.cutOff = false;
+            search(game, depth, -INFINITY, INFINITY, 0);
+            if (this.stopped) {
+                break;
+            }
+            best = this.rootMove;
+            this.depthReached = depth;
+            if (!this.cutOff) {
+                // every line was searched to the end of the game, passes
+                // and all, so going deeper would find nothing new
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get ready for a new search.
+     *
+     * @param game the position about to be searched
+     * @param deadline when the search has to stop, from {@link System#nanoTime()}
+     */
+    void start(Reversi game, long deadline) {
+        prepare(game);
+        this.deadline = deadline;
+        this.stopped = false;
+        this.nodes = 0;
+        this.depthReached = 0;
+        this.cutOff = false;
+    }
+
+    /**
+     * Did the search run out of time?
+     *
+     * @return whether the last search was cut short
+     */
+    boolean isStopped() {
+        return this.stopped;
+    }
+
+    /**
+     * Did the search stop short of the end of the game anywhere?
+     *
+     * @return whether any position was scored because the depth ran out
+     * since the searcher was last {@link #start started}
+     */
+    boolean isCutOff() {
+        return this.cutOff;
+    }
+
+    /**
+     * Search a single move from the root.  This is how {@link ParallelSearch}
+     * hands root moves out to its threads.
+     *
+     * @param game the root position, which is restored before returning
+     * @param move the move to search, packed as <tt>row*cols+col</tt>
+     * @param depth how many plies to search, including the move itself
+     * @param alpha lower bound of the search window
+     * @param beta upper bound of the search window
+     * @return the move's score from the point of view of the player to move
+     * @throws ReversiException if a move cannot be made or unmade
+     */
+    int searchMove(Reversi game, int move, int depth, int alpha, int beta)
+            throws ReversiException {
+        game.makeMove(move / this.cols, move % this.cols);
+        int score = -search(game, depth - 1, -beta, -alpha, 1);
+        game.unmakeMove();
+        return score;
+    }
+
+    /**
+     * Set up the move lists for the size of board being searched, and,
+     * if the table is this searcher's own, forget what was learned about
+     * games of another size or played under other rules.
+     *
+     * @param game the position about to be searched
+     */
+    private void prepare(Reversi game) {
+        if (this.moves == null || game.getRows() != this.rows || game.getCols() != this.cols
+                || game.getRules() != this.rules) {
+            this.rows = game.getRows();
+            this.cols = game.getCols();
+            this.rules = game.getRules();
+            // one ply for each empty square, and under the strict rules one
+            // for a pass before each move, plus the root
+            int plies = this.rows * this.cols * (this.rules == Reversi.Rules.STRICT ? 2 : 1);
+            this.moves = new int[plies + 1][this.rows * this.cols];
+            // the same position can score differently under other rules
+            if (this.ownsTable) {
+                this.table.clear();
+            }
+        }
+    }
+
+    /**
+     * Negamax alpha-beta search.
+     *
+     * @param game the position, which is restored before returning
+     * @param depth how many more plies to search
+     * @param alpha lower bound of the search window
+     * @param beta upper bound of the search window
+     * @param ply distance from the root
+     * @return the score from the point of view of the player to move
+     * @throws ReversiException if a move cannot be made or unmade
+     */
+    private int search(Reversi game, int depth, int alpha, int beta, int ply)
+            throws ReversiException {
+        if (++this.nodes % CLOCK_CHECK == 0 && System.nanoTime() > this.deadline) {
+            this.stopped = true;
+        }
+        if (this.stopped) {
+            return 0;
+        }
+        if (game.gameOver()) {
+            return terminal(game);
+        }
+        if (depth == 0) {
+            this.cutOff = true;
+            return evaluate(game);
+        }
+
+        // see if this position has been searched before
+        long key = game.getHash();
+        long entry = this.table.probe(key);
+        int hashMove = -1;
+        if (entry != 0) {
+            hashMove = TranspositionTable.move(entry);
+            int stored = TranspositionTable.depth(entry);
+            if (stored >= depth && ply > 0) {
+                if (stored != TranspositionTable.SOLVED) {
+                    // the score itself was cut off when it was stored
+                    this.cutOff = true;
+                }
+                int score = TranspositionTable.score(entry);
+                switch (TranspositionTable.bound(entry)) {
+                    case TranspositionTable.EXACT:
+                        return score;
+                    case TranspositionTable.LOWER:
+                        alpha = Math.max(alpha, score);
+                        break;
+                    case TranspositionTable.UPPER:
+                        beta = Math.min(beta, score);
+                        break;
+                }
+                if (alpha >= beta) {
+                    return score;
+                }
+            }
+        }
+
+        int[] list = this.moves[ply];
+        int n = game.legalMoves(list);
+        if (n == 0) {
+            // under the strict rules the player passes, which costs a ply
+            game.pass();
+            int score = -search(game, depth - 1, -beta, -alpha, ply + 1);
+            game.unmakeMove();
+            return score;
+        }
+        // note whether this position's own lines are cut off, so that a
+        // result reaching the end of the game can be stored as solved
+        boolean cutBefore = this.cutOff;
+        this.cutOff = false;
+        // try the best move from last time first
+        for (int i=1; i<n; ++i) {
+            if (list[i] == hashMove) {
+                list[i] = list[0];
+                list[0] = hashMove;
+                break;
+            }
+        }
+
+        int alphaOrig = alpha;
+        int best = -INFINITY;
+        int bestMove = list[0];
+        for (int i=0; i<n; ++i) {
+            int move = list[i];
+            game.makeMove(move / this.cols, move % this.cols);
+            int score = -search(game, depth - 1, -beta, -alpha, ply + 1);
+            game.unmakeMove();
+            if (this.stopped) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+            }
+            if (best > alpha) {
+                alpha = best;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        int bound = best <= alphaOrig ? TranspositionTable.UPPER
+                : best >= beta ? TranspositionTable.LOWER
+                : TranspositionTable.EXACT;
+        int storeDepth = this.cutOff ? Math.min(depth, TranspositionTable.SOLVED - 1)
+                : TranspositionTable.SOLVED;
+        this.table.store(key, best, storeDepth, bound, bestMove);
+        this.cutOff |= cutBefore;
+        if (ply == 0) {
+            this.rootMove = bestMove;
+        }
+        return best;
+    }
+
+    /**
+     * Score a finished game.
+     *
+     * @param game the position
+     * @return a win or loss score from the point of view of the player to move
+     */
+    private static int terminal(Reversi game) {
+        int margin = margin(game);
+        return margin > 0 ? WIN + margin : margin < 0 ? -WIN + margin : 0;
+    }
+
+    /**
+     * Estimate the value of an unfinished game: the disc margin, with
+     * discs on the corners counting extra.
+     *
+     * @param game the position
+     * @return the score from the point of view of the player to move
+     */
+    private int evaluate(Reversi game) {
+        Reversi.Move me = game.getTurn();
+        int corners = corner(game, 0, 0, me)
+                + corner(game, 0, this.cols - 1, me)
+                + corner(game, this.rows - 1, 0, me)
+                + corner(game, this.rows - 1, this.cols - 1, me);
+        return margin(game) + CORNER * corners;
+    }
+
+    /**
+     * Who holds a corner?
+     *
+     * @param game the position
+     * @param row the corner's row
+     * @param col the corner's column
+     * @param me the player to move
+     * @return 1 if the player to move holds it, -1 if the other player does, else 0
+     */
+    private static int corner(Reversi game, int row, int col, Reversi.Move me) {
+        Reversi.Move there = game.getContents(row, col);
+        return there == Reversi.Move.NONE ? 0 : there == me ? 1 : -1;
+    }
+
+    /**
+     * Get the disc margin.
+     *
+     * @param game the position
+     * @return the player to move's discs less the other player's
+     */
+    private static int margin(Reversi game) {
+        int p1 = game.getScore(Reversi.Move.PLAYER_ONE);
+        int p2 = game.getScore(Reversi.Move.PLAYER_TWO);
+        return game.getTurn() == Reversi.Move.PLAYER_ONE ? p1 - p2 : p2 - p1;
+    }
+}
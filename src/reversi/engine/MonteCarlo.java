@@ -0,0 +1,485 @@
+package reversi.engine;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A computer player that picks moves by Monte Carlo tree search, for
+ * boards where there is no good evaluation function to search with: big
+ * ones, odd shapes and the relaxed rules.  Each move is chosen by playing
+ * as many games of random moves from the position as the time allows, and
+ * growing a tree of the moves that did best, which is searched more
+ * deeply where the playouts say it is worth it (UCT).<P>
+ *
+ * Every thread plays out on its own copy of the board, making and
+ * unmaking moves as {@link AlphaBeta} does, with its own random numbers.
+ * The tree is shared without locks: the statistics of a node are updated
+ * atomically, and a node's children are made once, by whichever thread
+ * gets there first.  A thread on its way down the tree counts a visit to
+ * each node it passes straight away, as if the playout had already been
+ * lost (a "virtual loss"), so the other threads are steered onto other
+ * lines until the real result comes back up.<P>
+ *
+ * The calling thread plays out too, so a searcher with one thread needs
+ * no pool.  A searcher keeps no state between moves, and each search
+ * reports its own {@link Result}, so one can be shared by many games at
+ * once, their moves taking turns on the pool's threads.
+ */
+public class MonteCarlo implements Closeable {
+    /** what a node's move is when the player passes */
+    private static final int PASS = -1;
+    /** the children of a node with no moves, at the end of the game */
+    private static final Node[] NONE = new Node[0];
+    /** visits to a node before it is given children */
+    private static final int EXPAND_VISITS = 2;
+    /** how much UCT favors trying moves that have had few playouts */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /** the threads to play out on besides the caller's, or null */
+    private ForkJoinPool pool;
+    /** how many threads play out, including the caller's */
+    private int threads;
+
+    /**
+     * What one search found.
+     */
+    public static final class Result {
+        /** the best move, packed as <tt>row*cols+col</tt> */
+        private final int move;
+        /** playouts made, over all threads */
+        private final long playouts;
+
+        /**
+         * Create a result.
+         *
+         * @param move the best move
+         * @param playouts playouts made
+         */
+        Result(int move, long playouts) {
+            this.move = move;
+            this.playouts = playouts;
+        }
+
+        /**
+         * Get the best move found.
+         *
+         * @return the move, packed as <tt>row*getCols()+col</tt>
+         */
+        public int getMove() {
+            return this.move;
+        }
+
+        /**
+         * Get the number of playouts the search made, over all threads.
+         *
+         * @return the playout count
+         */
+        public long getPlayouts() {
+            return this.playouts;
+        }
+    }
+
+    /**
+     * Create a searcher.
+     *
+     * @param threads how many threads to play out with, including the
+     *                caller's
+     */
+    public MonteCarlo(int threads) {
+        this.threads = Math.max(1, threads);
+        if (this.threads > 1) {
+            this.pool = new ForkJoinPool(this.threads - 1);
+        }
+    }
+
+    /**
+     * Find the best move for the player whose turn it is.  The board is
+     * not changed.
+     *
+     * @param game the position to search
+     * @param millis how long to search for
+     * @return the best move found, packed as <tt>row*getCols()+col</tt>
+     * @throws ReversiException if the game is over or the player must pass
+     */
+    public int bestMove(Reversi game, long millis) throws ReversiException {
+        return bestMove(game, millis, new AtomicBoolean());
+    }
+
+    /**
+     * Find the best move for the player whose turn it is, unless the
+     * search is cancelled first.  The board is not changed.
+     *
+     * @param game the position to search
+     * @param millis how long to search for
+     * @param cancelled set, from any thread, to stop the search
+     * @return the best move found, packed as <tt>row*getCols()+col</tt>
+     * @throws ReversiException if the game is over, the player must pass
+     * or the search was cancelled
+     */
+    public int bestMove(Reversi game, long millis, AtomicBoolean cancelled)
+            throws ReversiException {
+        return search(game, millis, cancelled).getMove();
+    }
+
+    /**
+     * Search for the best move for the player whose turn it is, unless the
+     * search is cancelled first.  The board is not changed.
+     *
+     * @param game the position to search
+     * @param millis how long to search for
+     * @param cancelled set, from any thread, to stop the search
+     * @return the best move found, and how many playouts found it
+     * @throws ReversiException if the game is over, the player must pass
+     * or the search was cancelled
+     */
+    public Result search(Reversi game, long millis, AtomicBoolean cancelled)
+            throws ReversiException {
+        if (game.gameOver()) {
+            throw new ReversiException("Game over");
+        } else if (game.mustPass()) {
+            throw new ReversiException("No move to make");
+        }
+        Search search = new Search(game, System.nanoTime() + millis * 1_000_000L, cancelled);
+        Node[] moves = search.root.children;
+        if (moves.length == 1) {
+            return new Result(moves[0].move, 0);
+        }
+
+        // each thread seeds its own random numbers, since searches for
+        // different games may be starting at once
+        List<Playouts> helpers = new ArrayList<>();
+        if (this.pool != null) {
+            for (int i=1; i<this.threads; ++i) {
+                Playouts helper = new Playouts(search, new SplittableRandom());
+                helpers.add(helper);
+                this.pool.execute(helper);
+            }
+        }
+        Playouts mine = new Playouts(search, new SplittableRandom());
+        mine.invoke();
+        for (Playouts helper : helpers) {
+            helper.join();
+        }
+
+        for (Playouts p : helpers) {
+            if (p.failure != null) {
+                throw p.failure;
+            }
+        }
+        if (mine.failure != null) {
+            throw mine.failure;
+        }
+        if (cancelled.get()) {
+            throw new ReversiException("Search cancelled");
+        }
+
+        // the move played out most is the one the search trusts most
+        Node best = moves[0];
+        for (Node child : moves) {
+            if (child.visits > best.visits) {
+                best = child;
+            }
+        }
+        return new Result(best.move, search.playouts.sum());
+    }
+
+    /**
+     * Stop the playout threads.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A move in the tree, with what the playouts through it have found.
+     */
+    private static final class Node {
+        /** updates {@link #visits} atomically */
+        private static final VarHandle VISITS;
+        /** updates {@link #wins} atomically */
+        private static final VarHandle WINS;
+        /** sets {@link #children} once */
+        private static final VarHandle CHILDREN;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                VISITS = lookup.findVarHandle(Node.class, "visits", int.class);
+                WINS = lookup.findVarHandle(Node.class, "wins", int.class);
+                CHILDREN = lookup.findVarHandle(Node.class, "children", Node[].class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /** the move, packed as <tt>row*cols+col</tt>, or {@link #PASS} */
+        final int move;
+        /** playouts through this node, including those still under way */
+        volatile int visits;
+        /**
+         * half points won by the player who made the move: two for each
+         * playout won and one for each tied
+         */
+        volatile int wins;
+        /** the moves that follow, or null until the node is expanded */
+        volatile Node[] children;
+
+        /**
+         * Create a node that has not been visited.
+         *
+         * @param move the move
+         */
+        Node(int move) {
+            this.move = move;
+        }
+
+        /**
+         * Count a visit, before its playout is finished.
+         */
+        void visit() {
+            VISITS.getAndAdd(this, 1);
+        }
+
+        /**
+         * Add a playout's result.
+         *
+         * @param halfPoints two for a win, one for a tie
+         */
+        void score(int halfPoints) {
+            if (halfPoints != 0) {
+                WINS.getAndAdd(this, halfPoints);
+            }
+        }
+
+        /**
+         * Give the node its children, unless another thread already has.
+         *
+         * @param game the position after the node's move
+         * @param moves scratch space for the legal moves
+         * @return the children
+         */
+        Node[] expand(Reversi game, int[] moves) {
+            int n = game.legalMoves(moves);
+            Node[] children;
+            if (n > 0) {
+                children = new Node[n];
+                for (int i=0; i<n; ++i) {
+                    children[i] = new Node(moves[i]);
+                }
+            } else {
+                children = game.gameOver() ? NONE : new Node[] {new Node(PASS)};
+            }
+            Node[] witness = (Node[]) CHILDREN.compareAndExchange(this, (Node[]) null, children);
+            return witness == null ? children : witness;
+        }
+
+        /**
+         * Pick the child to play out through next, by its upper confidence
+         * bound.  A child nobody has visited yet comes first.
+         *
+         * @param children the children
+         * @return the child
+         */
+        Node select(Node[] children) {
+            double logVisits = Math.log(Math.max(1, this.visits));
+            Node best = null;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                int visits = child.visits;
+                if (visits == 0) {
+                    return child;
+                }
+                double bound = child.wins / (2.0 * visits) +
+                        EXPLORATION * Math.sqrt(logVisits / visits);
+                if (bound > bestBound) {
+                    bestBound = bound;
+                    best = child;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * What the threads searching one position share.
+     */
+    private static final class Search {
+        /** the position, which is copied and not changed */
+        final Reversi game;
+        /** the root of the tree, already expanded */
+        final Node root;
+        /** when the search has to stop, from {@link System#nanoTime()} */
+        final long deadline;
+        /** set to stop the search early */
+        final AtomicBoolean cancelled;
+        /** playouts made so far */
+        final LongAdder playouts = new LongAdder();
+
+        /**
+         * Get ready to search a position.
+         *
+         * @param game the position
+         * @param deadline when to stop
+         * @param cancelled set to stop early
+         */
+        Search(Reversi game, long deadline, AtomicBoolean cancelled) {
+            this.game = game;
+            this.deadline = deadline;
+            this.cancelled = cancelled;
+            this.root = new Node(PASS);
+            this.root.expand(game, new int[game.getRows() * game.getCols()]);
+        }
+
+        /**
+         * Is there time for another playout?
+         *
+         * @return whether to keep going
+         */
+        boolean running() {
+            return System.nanoTime() < this.deadline && !this.cancelled.get();
+        }
+    }
+
+    /**
+     * One thread's share of a search: playouts on its own copy of the
+     * board until time runs out.
+     */
+    private static final class Playouts extends RecursiveAction {
+        /** for serialization, which is never used */
+        private static final long serialVersionUID = 1L;
+        /** the search */
+        private final Search search;
+        /** this thread's copy of the position */
+        private final Reversi game;
+        /** this thread's random numbers */
+        private final SplittableRandom random;
+        /** the nodes of the current descent, from the root */
+        private final Node[] path;
+        /** whether player one made the move of each node on the path */
+        private final boolean[] playerOne;
+        /** scratch space for legal moves */
+        private final int[] moves;
+        /** why the playouts failed, if they did */
+        private ReversiException failure;
+
+        /**
+         * Get ready to play out.
+         *
+         * @param search the search
+         * @param random this thread's random numbers
+         */
+        Playouts(Search search, SplittableRandom random) {
+            this.search = search;
+            this.game = new Reversi(search.game);
+            this.random = random;
+            int squares = this.game.getRows() * this.game.getCols();
+            // every move but the last can be followed by a pass
+            this.path = new Node[2 * squares + 1];
+            this.playerOne = new boolean[2 * squares + 1];
+            this.moves = new int[squares];
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                while (this.search.running()) {
+                    playout();
+                    this.search.playouts.increment();
+                }
+            } catch (ReversiException e) {
+                this.failure = e;
+            }
+        }
+
+        /**
+         * Go down the tree, play the rest of the game out at random, and
+         * take the result back up.  The board is back at the root after.
+         *
+         * @throws ReversiException if the board refuses one of its own
+         * legal moves
+         */
+        private void playout() throws ReversiException {
+            Node node = this.search.root;
+            node.visit();
+            int depth = 0;
+            int plies = 0;
+
+            // down the tree, counting a visit (a virtual loss) at each node
+            while (true) {
+                Node[] children = node.children;
+                if (children == null) {
+                    if (node.visits < EXPAND_VISITS) {
+                        break;
+                    }
+                    children = node.expand(this.game, this.moves);
+                }
+                if (children.length == 0) {
+                    break;
+                }
+                node = node.select(children);
+                node.visit();
+                this.playerOne[++depth] = this.game.getTurn() == Reversi.Move.PLAYER_ONE;
+                this.path[depth] = node;
+                play(node.move);
+                ++plies;
+            }
+
+            // then random moves to the end of the game
+            while (true) {
+                int n = this.game.legalMoves(this.moves);
+                if (n == 0) {
+                    if (this.game.gameOver()) {
+                        break;
+                    }
+                    this.game.pass();
+                } else {
+                    play(this.moves[this.random.nextInt(n)]);
+                }
+                ++plies;
+            }
+
+            // the virtual losses become real results
+            Reversi.Move winner = this.game.getWinner();
+            for (int i=1; i<=depth; ++i) {
+                if (winner == Reversi.Move.NONE) {
+                    this.path[i].score(1);
+                } else if ((winner == Reversi.Move.PLAYER_ONE) == this.playerOne[i]) {
+                    this.path[i].score(2);
+                }
+            }
+            for (int i=0; i<plies; ++i) {
+                this.game.unmakeMove();
+            }
+        }
+
+        /**
+         * Make a move, or pass.
+         *
+         * @param move the move, packed as <tt>row*cols+col</tt>, or
+         *             {@link #PASS}
+         * @throws ReversiException if the move is not legal
+         */
+        private void play(int move) throws ReversiException {
+            if (move == PASS) {
+                this.game.pass();
+            } else {
+                int cols = this.game.getCols();
+                this.game.makeMove(move / cols, move % cols);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package reversi.engine;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A computer player that splits the root moves of a {@link Reversi}
+ * position across the threads of a {@link ForkJoinPool}.<P>
+ *
+ * Each iteration of the iterative deepening searches the most promising
+ * root move on its own first, to get a good bound (the "young brothers
+ * wait" idea), and then searches the rest of the root moves in parallel.
+ * Each thread searches its own copy of the board with its own
+ * {@link AlphaBeta}, and every thread shares one lock-free
+ * {@link TranspositionTable}, so what one thread learns helps the others.
+ * Each instance has its own pool, so the thread count can be chosen game
+ * by game.
+ */
+public class ParallelSearch implements Closeable {
+    /** the threads to search with */
+    private ForkJoinPool pool;
+    /** the table shared by all the threads */
+    private TranspositionTable table;
+    /** number of rows in the boards the table holds */
+    private int rows;
+    /** number of columns in the boards the table holds */
+    private int cols;
+    /** the rules of the games the table holds */
+    private Reversi.Rules rules;
+    /** searchers not currently in use, one per thread at most */
+    private ConcurrentLinkedQueue<AlphaBeta> idle;
+
+    /** nodes visited by the most recent search */
+    private LongAdder nodes;
+    /** deepest iteration completed by the most recent search */
+    private int depthReached;
+
+    /**
+     * Create a parallel searcher.
+     *
+     * @param tableBytes memory budget for the shared transposition table
+     * @param threads how many threads to search with
+     */
+    public ParallelSearch(long tableBytes, int threads) {
+        this.pool = new ForkJoinPool(threads);
+        this.table = new TranspositionTable(tableBytes);
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.nodes = new LongAdder();
+    }
+
+    /**
+     * Get the number of nodes visited by the most recent search, over all
+     * threads.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    /**
+     * Get the deepest iteration the most recent search completed.
+     *
+     * @return the depth
+     */
+    public int getDepthReached() {
+        return this.depthReached;
+    }
+
+    /**
+     * Find the best move for the player whose turn it is.  The board is
+     * not changed.
+     *
+     * @param game the position to search
+     * @param maxDepth the deepest iteration to search
+     * @param millis how long to search for
+     * @return the best move found, packed as <tt>row*getCols()+col</tt>
+     * @throws ReversiException if the game is over or the player must pass
+     */
+    public int bestMove(Reversi game, int maxDepth, long millis) throws ReversiException {
+        if (game.gameOver()) {
+            throw new ReversiException("Game over");
+        } else if (game.mustPass()) {
+            throw new ReversiException("No move to make");
+        }
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        this.nodes.reset();
+        this.depthReached = 0;
+        if (game.getRows() != this.rows || game.getCols() != this.cols
+                || game.getRules() != this.rules) {
+            // the searchers never clear the shared table themselves, so
+            // forget games of another size or rules before any of them start
+            this.rows = game.getRows();
+            this.cols = game.getCols();
+            this.rules = game.getRules();
+            this.table.clear();
+        }
+
+        int[] rootMoves = new int[game.getRows() * game.getCols()];
+        int n = game.legalMoves(rootMoves);
+        int best = rootMoves[0];
+        for (int depth=1; depth<=maxDepth; ++depth) {
+            // search last iteration's best move first
+            for (int i=1; i<n; ++i) {
+                if (rootMoves[i] == best) {
+                    rootMoves[i] = rootMoves[0];
+                    rootMoves[0] = best;
+                    break;
+                }
+            }
+
+            // the eldest brother is searched alone...
+            AlphaBeta eldest = take();
+            Reversi root = new Reversi(game);
+            eldest.start(root, deadline);
+            int score = eldest.searchMove(root, rootMoves[0], depth,
+                    -AlphaBeta.INFINITY, AlphaBeta.INFINITY);
+            boolean stopped = eldest.isStopped();
+            AtomicBoolean cutOff = new AtomicBoolean(eldest.isCutOff());
+            this.nodes.add(eldest.getNodes());
+            give(eldest);
+            if (stopped) {
+                break;
+            }
+
+            // ...and then the young brothers are searched in parallel
+            AtomicLong bestSoFar = new AtomicLong(pack(score, 0));
+            AtomicBoolean timedOut = new AtomicBoolean(false);
+            List<RootMove> tasks = new ArrayList<>(n - 1);
+            for (int i=1; i<n; ++i) {
+                tasks.add(new RootMove(game, rootMoves, i, depth, deadline, bestSoFar,
+                        timedOut, cutOff));
+            }
+            this.pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+            for (RootMove task : tasks) {
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+            }
+            if (timedOut.get()) {
+                break;
+            }
+
+            best = rootMoves[(int) bestSoFar.get()];
+            this.depthReached = depth;
+            if (!cutOff.get()) {
+                // every line was searched to the end of the game, passes
+                // and all, so going deeper would find nothing new
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pack a score and a root move index so that the best score compares
+     * highest.
+     *
+     * @param score the score
+     * @param index the index of the root move
+     * @return the packed pair
+     */
+    private static long pack(int score, int index) {
+        return (long) score << 32 | index;
+    }
+
+    /**
+     * Get a searcher that no other thread is using.
+     *
+     * @return the searcher
+     */
+    private AlphaBeta take() {
+        AlphaBeta searcher = this.idle.poll();
+        return searcher != null ? searcher : new AlphaBeta(this.table);
+    }
+
+    /**
+     * Put a searcher back for another thread to use.
+     *
+     * @param searcher the searcher
+     */
+    private void give(AlphaBeta searcher) {
+        this.idle.offer(searcher);
+    }
+
+    /**
+     * Stop the search threads.
+     */
+    @Override
+    public void close() {
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * The search of one of the young brothers at the root.
+     */
+    private class RootMove extends RecursiveAction {
+        /** for serialization, which is never used */
+        private static final long serialVersionUID = 1L;
+        /** the root position, which is copied and not changed */
+        private final Reversi game;
+        /** all the root moves */
+        private final int[] rootMoves;
+        /** which root move to search */
+        private final int index;
+        /** how many plies to search, including the root move */
+        private final int depth;
+        /** when the search has to stop */
+        private final long deadline;
+        /** the best score and root move index found so far, packed */
+        private final AtomicLong bestSoFar;
+        /** set if any root move search ran out of time */
+        private final AtomicBoolean timedOut;
+        /** set if any root move search stopped short of the end of the game */
+        private final AtomicBoolean cutOff;
+        /** why the search failed, if it did */
+        private ReversiException failure;
+
+        RootMove(Reversi game, int[] rootMoves, int index, int depth, long deadline,
+                 AtomicLong bestSoFar, AtomicBoolean timedOut, AtomicBoolean cutOff) {
+            this.game = game;
+            this.rootMoves = rootMoves;
+            this.index = index;
+            this.depth = depth;
+            this.deadline = deadline;
+            this.bestSoFar = bestSoFar;
+            this.timedOut = timedOut;
+            this.cutOff = cutOff;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.timedOut.get()) {
+                return;
+            }
+            AlphaBeta searcher = take();
+            try {
+                Reversi copy = new Reversi(this.game);
+                searcher.start(copy, this.deadline);
+                // only a move that beats the best so far is interesting
+                int alpha = (int) (this.bestSoFar.get() >> 32);
+                int score = searcher.searchMove(copy, this.rootMoves[this.index],
+                        this.depth, alpha, AlphaBeta.INFINITY);
+                nodes.add(searcher.getNodes());
+                if (searcher.isCutOff()) {
+                    this.cutOff.set(true);
+                }
+                if (searcher.isStopped()) {
+                    this.timedOut.set(true);
+                } else if (score > alpha) {
+                    this.bestSoFar.accumulateAndGet(pack(score, this.index), Math::max);
+                }
+            } catch (ReversiException e) {
+                this.failure = e;
+            } finally {
+                give(searcher);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package reversi.engine;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the positions reachable from a {@link Reversi} position in a
+ * given number of moves ("perft"), as a check that a board is right and a
+ * measure of how fast it is.<P>
+ *
+ * Under the relaxed rules a move needs only an occupied neighbor, so which
+ * moves are legal does not depend on the colors of the discs, and a board
+ * that flips the wrong discs would still count the same positions.  So the
+ * {@link Reversi#getHash() hashes} of the positions reached are summed as
+ * well, and two boards only agree if they flipped the same discs all the
+ * way down.  A position where the game is over counts as one position
+ * reached.  Under the {@link Reversi.Rules#STRICT strict rules} a pass
+ * counts as a move.<P>
+ *
+ * With more than one thread, the moves near the root are split across the
+ * threads of a {@link ForkJoinPool}, each searching its own copy of the
+ * board; the rest of the tree is searched by making and unmaking moves on
+ * that copy, which allocates nothing.<P>
+ *
+ * Usage: java reversi.engine.Perft depth [-t #_threads] [-s #_rows #_cols]
+ * [-l ARRAY|BITBOARD|BITSET|RAYS] [-r RELAXED|STRICT]<P>
+ *
+ * Without <tt>-l</tt>, every layout that fits the board is counted and
+ * checked against {@link Reversi.Layout#ARRAY}, and, from an 8x8 board,
+ * against {@link #REFERENCE} or {@link #STRICT_REFERENCE}.
+ */
+public class Perft implements Closeable {
+    /**
+     * Positions reached from the start of an 8x8 game, and the sum of
+     * their hashes, by depth, as counted with {@link Reversi.Layout#ARRAY}
+     * under the {@link Reversi.Rules#RELAXED relaxed rules}.
+     */
+    private static final long[][] REFERENCE = {
+            {1L, 0xd496cc8ed48b8f71L},
+            {12L, 0xdfe24114c296b099L},
+            {176L, 0x30c2b1d8aa81ef43L},
+            {3_008L, 0xe442ad3b7fc87df9L},
+            {57_876L, 0xa0f04c65ae65b3c8L},
+            {1_223_480L, 0xa2eeb4f45bc70557L},
+            {27_927_528L, 0x2f9c423e966aa744L},
+            {679_519_480L, 0xfc003b2a6c3b0746L},
+    };
+
+    /**
+     * The same as {@link #REFERENCE} under the
+     * {@link Reversi.Rules#STRICT strict rules}.  The position counts are
+     * the well known ones for Othello.
+     */
+    private static final long[][] STRICT_REFERENCE = {
+            {1L, 0xd496cc8ed48b8f71L},
+            {4L, 0x6c6e94fe26ef77a9L},
+            {12L, 0xc9ee3cb32b77a673L},
+            {56L, 0x6e9b8489d7810b74L},
+            {244L, 0x88af11eb5bf27690L},
+            {1_396L, 0x2be23ae4bf4c9346L},
+            {8_200L, 0xafe26eb31761ecafL},
+            {55_092L, 0xbf0fa0943f1a0800L},
+            {390_216L, 0x109dcd20cb645f0aL},
+            {3_005_288L, 0x352763bdf7cf7cc4L},
+            {24_571_284L, 0x895341cab1e19aaeL},
+    };
+
+    /** remaining depth at which tasks stop splitting and search alone */
+    private static final int SPLIT_DEPTH = 4;
+
+    /** the threads to count with, or null to count on the caller's thread */
+    private ForkJoinPool pool;
+
+    /** moves made by the most recent count */
+    private LongAdder nodes = new LongAdder();
+    /** sum of the hashes of the positions reached by the most recent count */
+    private LongAdder checksum = new LongAdder();
+
+    /**
+     * Create a counter.
+     *
+     * @param threads how many threads to count with
+     */
+    public Perft(int threads) {
+        if (threads > 1) {
+            this.pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Get the number of moves made by the most recent count, at every
+     * depth.
+     *
+     * @return the node count
+     */
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    /**
+     * Get the sum of the hashes of the positions the most recent count
+     * reached, wrapping on overflow.
+     *
+     * @return the checksum
+     */
+    public long getChecksum() {
+        return this.checksum.sum();
+    }
+
+    /**
+     * Count the positions reachable in a number of moves.  The board is
+     * not changed.
+     *
+     * @param game the position to count from
+     * @param depth how many moves to look ahead
+     * @return how many positions were reached
+     * @throws ReversiException if the board refuses one of its own legal
+     * moves
+     */
+    public long count(Reversi game, int depth) throws ReversiException {
+        this.nodes.reset();
+        this.checksum.reset();
+        Count root = new Count(new Reversi(game), depth);
+        long leaves = this.pool == null ? root.invoke() : this.pool.invoke(root);
+        if (root.failure != null) {
+            throw root.failure;
+        }
+        return leaves;
+    }
+
+    /**
+     * Stop the counting threads.
+     */
+    @Override
+    public void close() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    /**
+     * The count below one position.  Near the root it is split into a task
+     * per move; deeper down it searches alone.
+     */
+    private class Count extends RecursiveTask<Long> {
+        /** for serialization, which is never used */
+        private static final long serialVersionUID = 1L;
+        /** the position, which belongs to this task */
+        private final Reversi game;
+        /** how many moves to look ahead */
+        private final int depth;
+        /** why the count failed, if it did */
+        private ReversiException failure;
+        /** moves made by this task, added to the total once at the end */
+        private long made;
+        /** sum of the hashes of the positions this task reached */
+        private long sum;
+
+        /**
+         * Create a count.
+         *
+         * @param game the position, which is changed as it is searched
+         * @param depth how many moves to look ahead
+         */
+        Count(Reversi game, int depth) {
+            this.game = game;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            try {
+                long leaves = pool != null && this.depth > SPLIT_DEPTH ? split() :
+                        search(new int[this.depth + 1][this.game.getRows() * this.game.getCols()],
+                                this.depth);
+                nodes.add(this.made);
+                checksum.add(this.sum);
+                return leaves;
+            } catch (ReversiException e) {
+                this.failure = e;
+                return 0L;
+            }
+        }
+
+        /**
+         * Count each move's positions in a task of its own.
+         *
+         * @return how many positions were reached
+         * @throws ReversiException if a task failed
+         */
+        private long split() throws ReversiException {
+            if (this.game.gameOver()) {
+                this.sum += this.game.getHash();
+                return 1;
+            }
+            int cols = this.game.getCols();
+            int[] moves = new int[this.game.getRows() * cols];
+            int n = this.game.legalMoves(moves);
+            List<Count> tasks = new ArrayList<>(n);
+            for (int i=0; i<n; ++i) {
+                Reversi child = new Reversi(this.game);
+                child.makeMove(moves[i] / cols, moves[i] % cols);
+                tasks.add(new Count(child, this.depth - 1));
+            }
+            if (n == 0) {
+                Reversi child = new Reversi(this.game);
+                child.pass();
+                tasks.add(new Count(child, this.depth - 1));
+            }
+            this.made += tasks.size();
+            ForkJoinTask.invokeAll(tasks);
+            long leaves = 0;
+            for (Count task : tasks) {
+                if (task.failure != null) {
+                    throw task.failure;
+                }
+                leaves += task.join();
+            }
+            return leaves;
+        }
+
+        /**
+         * Count by making and unmaking moves on this task's board.
+         *
+         * @param moves a move list for each depth
+         * @param depth how many moves to look ahead
+         * @return how many positions were reached
+         * @throws ReversiException if the board refuses one of its own
+         * legal moves
+         */
+        private long search(int[][] moves, int depth) throws ReversiException {
+            if (depth == 0 || this.game.gameOver()) {
+                this.sum += this.game.getHash();
+                return 1;
+            }
+            int cols = this.game.getCols();
+            int[] list = moves[depth];
+            int n = this.game.legalMoves(list);
+            if (n == 0) {
+                this.game.pass();
+                long leaves = search(moves, depth - 1);
+                this.game.unmakeMove();
+                ++this.made;
+                return leaves;
+            }
+            long leaves = 0;
+            for (int i=0; i<n; ++i) {
+                this.game.makeMove(list[i] / cols, list[i] % cols);
+                leaves += search(moves, depth - 1);
+                this.game.unmakeMove();
+            }
+            this.made += n;
+            return leaves;
+        }
+    }
+
+    /**
+     * Count the positions from the start of a game, and check the counts.
+     *
+     * @param args the depth and options; see the class comment
+     * @throws ReversiException if a board refuses one of its own legal
+     * moves
+     */
+    public static void main(String[] args) throws ReversiException {
+        int depth = -1;
+        int threads = 1;
+        int rows = Reversi.DIM;
+        int cols = Reversi.DIM;
+        Reversi.Layout only = null;
+        Reversi.Rules rules = Reversi.Rules.RELAXED;
+        try {
+            for (int i=0; i<args.length; ++i) {
+                switch (args[i]) {
+                    case "-t": threads = Integer.parseInt(args[++i]); break;
+                    case "-s":
+                        rows = Integer.parseInt(args[++i]);
+                        cols = Integer.parseInt(args[++i]);
+                        break;
+                    case "-l": only = Reversi.Layout.valueOf(args[++i]); break;
+                    case "-r": rules = Reversi.Rules.valueOf(args[++i]); break;
+                    default: depth = Integer.parseInt(args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            depth = -1;
+        }
+        if (depth < 0) {
+            System.out.println("Usage: java Perft depth [-t #_threads] " +
+                    "[-s #_rows #_cols] [-l ARRAY|BITBOARD|BITSET|RAYS] [-r RELAXED|STRICT]");
+            System.exit(1);
+        }
+
+        boolean ok = true;
+        long expectedCount = -1;
+        long expectedSum = 0;
+        long[][] reference = rules == Reversi.Rules.STRICT ? STRICT_REFERENCE : REFERENCE;
+        if (rows == Reversi.DIM && cols == Reversi.DIM && depth < reference.length) {
+            expectedCount = reference[depth][0];
+            expectedSum = reference[depth][1];
+        }
+        try (Perft perft = new Perft(threads)) {
+            for (Reversi.Layout layout : Reversi.Layout.values()) {
+                if (only != null ? layout != only :
+                        layout == Reversi.Layout.BITBOARD &&
+                                (rows != Reversi.DIM || cols != Reversi.DIM)) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                long count = perft.count(new Reversi(rows, cols, layout, rules), depth);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long sum = perft.getChecksum();
+                System.out.printf("%-8s depth %d: %d positions, checksum %016x, " +
+                                "%.3f s, %.0f nodes/s%n", layout, depth, count, sum,
+                        seconds, perft.getNodes() / seconds);
+
+                if (expectedCount < 0) {
+                    // the first layout, ARRAY unless another was asked for,
+                    // is what the rest are checked against
+                    expectedCount = count;
+                    expectedSum = sum;
+                } else if (count != expectedCount || sum != expectedSum) {
+                    System.out.printf("%-8s MISMATCH: expected %d positions, checksum %016x%n",
+                            layout, expectedCount, expectedSum);
+                    ok = false;
+                }
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+}
@@ -0,0 +1,151 @@
+package reversi.engine;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results keyed by position hash.  Entries
+ * live in two parallel <tt>long</tt> arrays, so the whole table is two
+ * allocations no matter how many positions it holds, and its size is set
+ * once from a memory budget.<P>
+ *
+ * Each entry packs the score (32 bits), the search depth (8 bits), the
+ * {@link #EXACT}/{@link #LOWER}/{@link #UPPER} bound type (2 bits) and the
+ * best move plus one (22 bits, 0 meaning none) into a single word.<P>
+ *
+ * The table can be shared by several searching threads without locks.
+ * The key word of each slot holds the position hash XORed with the data
+ * word, so if two threads write the same slot at once and the words get
+ * mixed up, the check in {@link #probe(long)} fails and the entry is
+ * simply treated as missing.
+ */
+public class TranspositionTable {
+    /** bytes used by each entry: one key word and one data word */
+    public static final int ENTRY_BYTES = 16;
+
+    /** the stored score is exact */
+    public static final int EXACT = 1;
+    /** the stored score is a lower bound (the search failed high) */
+    public static final int LOWER = 2;
+    /** the stored score is an upper bound (the search failed low) */
+    public static final int UPPER = 3;
+
+    /**
+     * the depth of a result whose search reached the end of the game on
+     * every line, and so holds however deep the search asking for it is
+     */
+    public static final int SOLVED = 0xFF;
+
+    /** position hash of each entry, XORed with its data */
+    private long[] keys;
+    /** packed score, depth, bound and move of each entry */
+    private long[] data;
+    /** index mask; the table size is a power of two */
+    private int mask;
+
+    /**
+     * Create a table that fits in a memory budget.
+     *
+     * @param bytes the most memory the table may use
+     * @rit.pre bytes is at least {@link #ENTRY_BYTES}
+     */
+    public TranspositionTable(long bytes) {
+        long entries = Long.highestOneBit(Math.max(1, bytes / ENTRY_BYTES));
+        int size = (int) Math.min(entries, 1 << 30);
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the number of entries in the table.
+     *
+     * @return the capacity
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Forget everything in the table.
+     */
+    public void clear() {
+        Arrays.fill(this.keys, 0L);
+        Arrays.fill(this.data, 0L);
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key the position hash
+     * @return the packed entry, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int i = (int) key & this.mask;
+        long entry = this.data[i];
+        return (this.keys[i] ^ entry) == key ? entry : 0L;
+    }
+
+    /**
+     * Store a search result, replacing whatever was in its slot unless that
+     * is a deeper result for the same position.
+     *
+     * @param key the position hash
+     * @param score the score
+     * @param depth how deep the search was, or {@link #SOLVED}
+     * @param bound {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move the best move found, packed as <tt>row*cols+col</tt>, or -1
+     */
+    public void store(long key, int score, int depth, int bound, int move) {
+        int i = (int) key & this.mask;
+        long old = this.data[i];
+        if ((this.keys[i] ^ old) == key && depth(old) > depth) {
+            return;
+        }
+        long entry = (score & 0xFFFFFFFFL)
+                | ((long) depth & 0xFF) << 32
+                | ((long) bound & 0x3) << 40
+                | ((long) (move + 1) & 0x3FFFFF) << 42;
+        this.keys[i] = key ^ entry;
+        this.data[i] = entry;
+    }
+
+    /**
+     * Unpack the score of an entry.
+     *
+     * @param entry the packed entry
+     * @return the score
+     */
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Unpack the search depth of an entry.
+     *
+     * @param entry the packed entry
+     * @return the depth
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Unpack the bound type of an entry.
+     *
+     * @param entry the packed entry
+     * @return {@link #EXACT}, {@link #LOWER} or {@link #UPPER}; 0 for no entry
+     */
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * Unpack the best move of an entry.
+     *
+     * @param entry the packed entry
+     * @return the move packed as <tt>row*cols+col</tt>, or -1 if none
+     */
+    public static int move(long entry) {
+        return (int) (entry >>> 42) - 1;
+    }
+}
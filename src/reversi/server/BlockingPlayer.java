@@ -0,0 +1,25 @@
+package reversi.server;
+
+import reversi.ReversiException;
+
+/**
+ * A {@link Player} in a game played start to finish by
+ * {@link ReversiGame#run()}, on a thread that waits for each move.
+ */
+public interface BlockingPlayer extends Player {
+    /**
+     * Sends a {@link reversi.ReversiProtocol#MAKE_MOVE} request, along with
+     * anything else waiting to be sent, and waits for the player's answer.
+     *
+     * @return The row and column in which the player would like to move.
+     * @throws ReversiException If the player's response is invalid.
+     */
+    int[] makeMove() throws ReversiException;
+
+    /**
+     * Stops {@link #makeMove()} waiting for the player's answer, which then
+     * fails.  Other messages can still be sent to the player.  This is
+     * called from another thread, when the player runs out of time.
+     */
+    void cancelMove();
+}
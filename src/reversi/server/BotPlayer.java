@@ -0,0 +1,188 @@
+package reversi.server;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+import reversi.engine.MonteCarlo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A computer {@link BlockingPlayer} that runs inside the server, picking its
+ * moves with a {@link MonteCarlo} search.  It needs no socket: the
+ * {@link ReversiGame} calls it directly, and it follows the game on a
+ * board of its own, from the moves and passes it is told about.<P>
+ *
+ * It only plays games driven by {@link ReversiGame#run()}, since its
+ * moves are worked out on the game's thread while the game waits.  Its
+ * engine may be shared with other bots; it is not closed with the player.
+ * On a clock, the time per move should leave room for the rest of the
+ * game, or the bot loses on time.<P>
+ *
+ * Usage: java reversi.server.BotPlayer #_rows #_cols millis_per_move
+ * [-s] [-t #_threads]<P>
+ *
+ * which plays one bot against another and prints the final board.
+ */
+public class BotPlayer implements BlockingPlayer {
+    /** picks the moves */
+    private MonteCarlo engine;
+    /** how long each move is searched for */
+    private long millis;
+    /** the game as the bot has been told about it */
+    private Reversi game;
+    /**
+     * set to stop the search for the current or next move; each move gets
+     * a fresh one, ready before it is asked for, so that a cancel which
+     * comes before the search starts still stops it
+     */
+    private volatile AtomicBoolean cancelled = new AtomicBoolean();
+
+    /**
+     * Create a bot.
+     *
+     * @param engine the search to pick moves with
+     * @param millis how long to search for each move
+     */
+    public BotPlayer(MonteCarlo engine, long millis) {
+        this.engine = engine;
+        this.millis = millis;
+    }
+
+    /**
+     * Gets a name for the bot, to record in a
+     * {@link reversi.archive.GameLog} in place of an address.
+     *
+     * @return the name
+     */
+    public String getId() {
+        return "mcts/" + this.millis + "ms";
+    }
+
+    /**
+     * Gets the bot's board, which is the game as it has been played so
+     * far.
+     *
+     * @return the board
+     */
+    public Reversi getGame() {
+        return this.game;
+    }
+
+    @Override
+    public void connect(int rows, int cols, Reversi.Rules rules) {
+        this.game = new Reversi(rows, cols, rules);
+    }
+
+    /**
+     * Searches the board for the best move.
+     *
+     * @return The row and column in which the bot would like to move.
+     * @throws ReversiException If the search was cancelled, or the bot
+     * has no move to make.
+     */
+    @Override
+    public int[] makeMove() throws ReversiException {
+        try {
+            int move = this.engine.bestMove(this.game, this.millis, this.cancelled);
+            return new int[] {move / this.game.getCols(), move % this.game.getCols()};
+        } finally {
+            this.cancelled = new AtomicBoolean();
+        }
+    }
+
+    @Override
+    public void cancelMove() {
+        this.cancelled.set(true);
+    }
+
+    @Override
+    public void moveMade(int row, int column, int[] flipped, int count) {
+        try {
+            this.game.makeMove(row, column);
+        } catch (ReversiException e) {
+            // the game made the move on its own board first
+            throw new IllegalStateException("Bot out of step: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void passMade() {
+        try {
+            this.game.pass();
+        } catch (ReversiException e) {
+            throw new IllegalStateException("Bot out of step: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void gameWon() {
+    }
+
+    @Override
+    public void gameTied() {
+    }
+
+    @Override
+    public void gameLost() {
+    }
+
+    @Override
+    public void error(String message) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Plays a game between two bots, with no server and no sockets.
+     *
+     * @param args the board size, the time per move and the options; see
+     *             the class comment
+     */
+    public static void main(String[] args) {
+        boolean strict = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean ok = args.length >= 3;
+        try {
+            for (int i=3; ok && i<args.length; ++i) {
+                switch (args[i]) {
+                    case "-s": strict = true; break;
+                    case "-t": threads = Integer.parseInt(args[++i]); break;
+                    default: ok = false;
+                }
+            }
+        } catch (RuntimeException e) {
+            ok = false;
+        }
+        if (!ok) {
+            System.out.println("Usage: java BotPlayer #_rows #_cols millis_per_move " +
+                    "[-s] [-t #_threads]");
+            System.exit(1);
+        }
+
+        int rows = Integer.parseInt(args[0]);
+        int cols = Integer.parseInt(args[1]);
+        long millis = Long.parseLong(args[2]);
+        Reversi.Rules rules = strict ? Reversi.Rules.STRICT : Reversi.Rules.RELAXED;
+        try (MonteCarlo engine = new MonteCarlo(threads)) {
+            BotPlayer one = new BotPlayer(engine, millis);
+            BotPlayer two = new BotPlayer(engine, millis);
+            one.connect(rows, cols, rules);
+            two.connect(rows, cols, rules);
+            new ReversiGame(rows, cols, rules, one, two).run();
+
+            Reversi game = one.getGame();
+            System.out.println(game);
+            System.out.printf("%s %d, %s %d: %s%n",
+                    Reversi.Move.PLAYER_ONE.getSymbol(), game.getScore(Reversi.Move.PLAYER_ONE),
+                    Reversi.Move.PLAYER_TWO.getSymbol(), game.getScore(Reversi.Move.PLAYER_TWO),
+                    game.getWinner() == Reversi.Move.NONE ? "tied" :
+                            "player " + game.getWinner().getSymbol() + " won");
+        }
+    }
+}
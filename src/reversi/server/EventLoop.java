@@ -0,0 +1,155 @@
+package reversi.server;
+
+import reversi.Reversi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One thread of a {@link ReversiNioServer}.  It waits on a
+ * {@link Selector} for any of its connections to become readable or
+ * writable, and moves the games on those connections along.  Both players
+ * of a game are always on the same loop, so a game is only ever touched by
+ * one thread and needs no locking.
+ */
+class EventLoop implements Runnable, Closeable {
+    /** number of rows in each board */
+    private int rows;
+    /** number of columns in each board */
+    private int cols;
+    /** waits for connections to be ready */
+    private Selector selector;
+    /** newly accepted connections, handed over by the accepting thread */
+    private Queue<SocketChannel> incoming = new ConcurrentLinkedQueue<>();
+    /** a player who is waiting for an opponent */
+    private NioPlayer waiting;
+    /** cleared to stop the loop */
+    private volatile boolean running = true;
+
+    /**
+     * Creates an event loop.
+     *
+     * @param rows number of rows in each board
+     * @param cols number of columns in each board
+     * @throws IOException if the selector cannot be opened
+     */
+    EventLoop(int rows, int cols) throws IOException {
+        this.rows = rows;
+        this.cols = cols;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Hands a newly accepted connection to this loop.  Safe to call from
+     * any thread.
+     *
+     * @param channel the connection
+     */
+    void add(SocketChannel channel) {
+        this.incoming.add(channel);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Runs the loop until {@link #close()} is called.
+     */
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.selector.select();
+                register();
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioPlayer player = (NioPlayer) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            player.readable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            player.writable();
+                        }
+                    } catch (IOException e) {
+                        player.disconnected();
+                    }
+                }
+                if (this.waiting != null && !this.waiting.isOpen()) {
+                    this.waiting = null;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Event loop failed!");
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // squash
+                }
+            }
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // squash
+            }
+        }
+    }
+
+    /**
+     * Registers the connections handed over since the last time round the
+     * loop, and pairs them off in games.  A connection that cannot be
+     * registered is closed, without disturbing the others on the loop.
+     */
+    private void register() {
+        SocketChannel channel;
+        while ((channel = this.incoming.poll()) != null) {
+            SelectionKey key;
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                key = channel.register(this.selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                System.err.println("Failed to register connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ioe) {
+                    // squash
+                }
+                continue;
+            }
+            NioPlayer player = new NioPlayer(channel, key);
+            key.attach(player);
+            player.connect(this.rows, this.cols, Reversi.Rules.RELAXED);
+
+            if (this.waiting == null) {
+                this.waiting = player;
+            } else {
+                ReversiGame game = new ReversiGame(this.rows, this.cols, this.waiting, player);
+                this.waiting.join(game, player);
+                player.join(game, this.waiting);
+                this.waiting = null;
+                game.start();
+            }
+        }
+    }
+
+    /**
+     * Stops the loop and closes all of its connections.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+}
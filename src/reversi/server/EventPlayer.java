@@ -0,0 +1,15 @@
+package reversi.server;
+
+/**
+ * A {@link Player} in a game driven one move at a time by an event driven
+ * server, through {@link ReversiGame#start()} and
+ * {@link ReversiGame#moveReceived}.
+ */
+public interface EventPlayer extends Player {
+    /**
+     * Sends a {@link reversi.ReversiProtocol#MAKE_MOVE} request without
+     * waiting for the answer.  The answer is passed on to
+     * {@link ReversiGame#moveReceived} when it arrives.
+     */
+    void requestMove();
+}
@@ -0,0 +1,83 @@
+package reversi.server;
+
+/**
+ * The time the two players of a game have left.  A clock is either per
+ * move, where every move must be made within the same time, or a total
+ * time for the game with an increment added after each move (a Fischer
+ * clock).
+ */
+public class GameClock {
+    /** the time each player starts with, in milliseconds */
+    private long baseMillis;
+    /** the time added after each move, in milliseconds */
+    private long incrementMillis;
+    /** whether each move gets the base time afresh */
+    private boolean perMove;
+    /** the time each player has left, in milliseconds */
+    private long[] remaining;
+
+    /**
+     * Create a clock.
+     *
+     * @param baseMillis the time each player starts with
+     * @param incrementMillis the time added after each move
+     * @param perMove whether every move gets the base time afresh, rather
+     *                than drawing on one total for the game
+     */
+    public GameClock(long baseMillis, long incrementMillis, boolean perMove) {
+        this.baseMillis = baseMillis;
+        this.incrementMillis = incrementMillis;
+        this.perMove = perMove;
+        this.remaining = new long[] {baseMillis, baseMillis};
+    }
+
+    /**
+     * Create a clock with the same settings as another, and full time, for
+     * a new game.
+     *
+     * @param other the clock to copy the settings of
+     */
+    public GameClock(GameClock other) {
+        this(other.baseMillis, other.incrementMillis, other.perMove);
+    }
+
+    /**
+     * Read a clock setting as given on the command line: seconds per move,
+     * such as <tt>30</tt>, or seconds for the game plus seconds added per
+     * move, such as <tt>300+5</tt>.
+     *
+     * @param setting the setting
+     * @return the clock
+     * @throws NumberFormatException if the setting cannot be read
+     */
+    public static GameClock parse(String setting) {
+        int plus = setting.indexOf('+');
+        if (plus < 0) {
+            return new GameClock(Long.parseLong(setting) * 1000, 0, true);
+        }
+        return new GameClock(Long.parseLong(setting.substring(0, plus)) * 1000,
+                Long.parseLong(setting.substring(plus + 1)) * 1000, false);
+    }
+
+    /**
+     * How long does a player have for the move it is about to make?
+     *
+     * @param player the player, 0 for player one and 1 for player two
+     * @return the time allowed, in milliseconds
+     */
+    public long allowed(int player) {
+        return this.perMove ? this.baseMillis : this.remaining[player];
+    }
+
+    /**
+     * Charge a player for a move it has made, and add the increment.
+     *
+     * @param player the player, 0 for player one and 1 for player two
+     * @param elapsedMillis how long the move took
+     */
+    public void moved(int player, long elapsedMillis) {
+        if (!this.perMove) {
+            this.remaining[player] += this.incrementMillis - elapsedMillis;
+        }
+    }
+}
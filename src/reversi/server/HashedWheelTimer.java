@@ -0,0 +1,162 @@
+package reversi.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single thread that runs tasks after a delay, for any number of games.
+ * Time is cut into ticks, and the ticks are laid round a wheel of
+ * buckets; a task goes in the bucket its deadline falls in, with a count
+ * of how many more turns of the wheel to wait.  Adding or cancelling a
+ * task costs the same however many are waiting, which suits game clocks:
+ * nearly every one is cancelled, because the player moved in time.<P>
+ *
+ * Tasks run on the timer's thread, so they must be quick.  A task may run
+ * up to a tick late, never early.
+ */
+public class HashedWheelTimer implements Closeable, Runnable {
+    /** how long a tick is, in nanoseconds */
+    private long tickNanos;
+    /** the buckets of waiting tasks; only touched by the timer's thread */
+    private List<List<Timeout>> wheel;
+    /** tasks added since the last tick */
+    private Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    /** the timer's thread */
+    private Thread thread;
+    /** when the wheel started turning */
+    private long startNanos;
+    /** set to stop the timer */
+    private volatile boolean closing;
+
+    /**
+     * A task waiting on the wheel.
+     */
+    public static class Timeout {
+        /** what to run */
+        private Runnable task;
+        /** when to run it, in nanoseconds of the timer's clock */
+        private long deadline;
+        /** how many more turns of the wheel to wait */
+        private long rounds;
+        /** set when the task has run or been cancelled */
+        private AtomicBoolean done = new AtomicBoolean();
+
+        /**
+         * Create a timeout.
+         *
+         * @param task what to run
+         * @param deadline when to run it
+         */
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Stop the task from running, if it has not already.
+         *
+         * @return whether the task was stopped; false if it has run
+         */
+        public boolean cancel() {
+            return this.done.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * Start a timer.
+     *
+     * @param tick how long each tick is
+     * @param unit the unit of the tick
+     * @param buckets how many ticks make one turn of the wheel
+     */
+    public HashedWheelTimer(long tick, TimeUnit unit, int buckets) {
+        this.tickNanos = unit.toNanos(tick);
+        this.wheel = new ArrayList<>(buckets);
+        for (int i=0; i<buckets; ++i) {
+            this.wheel.add(new ArrayList<>());
+        }
+        this.startNanos = System.nanoTime();
+        this.thread = new Thread(this, "reversi-timer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run a task after a delay.
+     *
+     * @param task what to run
+     * @param delay how long to wait
+     * @param unit the unit of the delay
+     * @return the timeout, which may be cancelled
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task,
+                System.nanoTime() - this.startNanos + unit.toNanos(delay));
+        this.added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Turns the wheel, a tick at a time, until the timer is closed.
+     */
+    @Override
+    public void run() {
+        long tick = 0;
+        while (!this.closing) {
+            // sleep until the end of the tick
+            long end = (tick + 1) * this.tickNanos;
+            long sleep = end - (System.nanoTime() - this.startNanos);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            // place the new tasks; any already due go in this tick's bucket
+            Timeout timeout;
+            while ((timeout = this.added.poll()) != null) {
+                long due = Math.max(tick, timeout.deadline / this.tickNanos);
+                timeout.rounds = (due - tick) / this.wheel.size();
+                this.wheel.get((int) (due % this.wheel.size())).add(timeout);
+            }
+
+            Iterator<Timeout> bucket = this.wheel.get((int) (tick % this.wheel.size())).iterator();
+            while (bucket.hasNext()) {
+                timeout = bucket.next();
+                if (timeout.done.get()) {
+                    bucket.remove();
+                } else if (timeout.rounds > 0) {
+                    --timeout.rounds;
+                } else {
+                    bucket.remove();
+                    if (timeout.done.compareAndSet(false, true)) {
+                        try {
+                            timeout.task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("Timer task failed: " + e);
+                        }
+                    }
+                }
+            }
+            ++tick;
+        }
+    }
+
+    /**
+     * Stops the timer.  Tasks still waiting never run.
+     */
+    @Override
+    public void close() {
+        this.closing = true;
+        this.thread.interrupt();
+    }
+}
@@ -0,0 +1,296 @@
+package reversi.server;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Pairs off waiting players who want the same board size and have similar
+ * ratings.<P>
+ *
+ * Waiting players are kept in lock-free queues, one per board size and
+ * band of ratings.  A player who joins is matched at once with anyone
+ * waiting in the same band.  Otherwise the player waits, and a background
+ * sweep every {@link #SWEEP_MILLIS} milliseconds pairs up whoever is left.
+ * Each time a player has waited another target interval the sweep looks
+ * one band further either side, so nobody waits long just because nobody
+ * has quite the same rating.  Players who have gone away while they
+ * waited are dropped rather than matched.
+ *
+ * @param <P> the type of player
+ */
+public class Matchmaker<P> implements Closeable {
+    /** the highest rating; higher ones are treated as this */
+    public static final int MAX_RATING = 4000;
+    /** how often the waiting players are swept, in milliseconds */
+    public static final long SWEEP_MILLIS = 50;
+
+    /**
+     * Told about each pair of players that has been matched.
+     *
+     * @param <P> the type of player
+     */
+    public interface Listener<P> {
+        /**
+         * Called when two players have been matched.  It may be called on
+         * the joining player's thread or on the sweep thread, so it should
+         * hand the game off rather than play it.
+         *
+         * @param one the player who waited longer, who should be player one
+         * @param two the other player
+         * @param rows number of rows they asked for
+         * @param cols number of columns they asked for
+         */
+        void matched(P one, P two, int rows, int cols);
+    }
+
+    /**
+     * A player waiting to be matched.
+     */
+    private static class Ticket<P> {
+        /** the player */
+        final P player;
+        /** when the player joined, from {@link System#nanoTime()} */
+        final long joined;
+        /** set by whoever matches the player, so it only happens once */
+        final AtomicBoolean taken = new AtomicBoolean();
+
+        Ticket(P player, long joined) {
+            this.player = player;
+            this.joined = joined;
+        }
+    }
+
+    /** rating points in each band */
+    private int bucketWidth;
+    /** how long a player waits before the search widens by one band */
+    private long targetMillis;
+    /** who to tell about matches */
+    private Listener<P> listener;
+    /** whether a waiting player is still there to be matched */
+    private Predicate<? super P> present;
+    /** set once the matchmaker has been shut down */
+    private volatile boolean closed;
+    /** the bands of waiting players for each board size */
+    private Map<Long, Queue<Ticket<P>>[]> pools = new ConcurrentHashMap<>();
+    /** runs the sweep */
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Create a matchmaker and start its sweep.
+     *
+     * @param bucketWidth rating points in each band
+     * @param targetMillis how long a player may wait before the search is
+     *                     widened to the next band either side
+     * @param listener who to tell about matches
+     */
+    public Matchmaker(int bucketWidth, long targetMillis, Listener<P> listener) {
+        this(bucketWidth, targetMillis, listener, player -> true);
+    }
+
+    /**
+     * Create a matchmaker that drops players who have gone away, and start
+     * its sweep.
+     *
+     * @param bucketWidth rating points in each band
+     * @param targetMillis how long a player may wait before the search is
+     *                     widened to the next band either side
+     * @param listener who to tell about matches
+     * @param present checks, without waiting, whether a player is still
+     *                there; it is called on a player only by the thread
+     *                about to match it
+     */
+    public Matchmaker(int bucketWidth, long targetMillis, Listener<P> listener,
+                      Predicate<? super P> present) {
+        this.bucketWidth = bucketWidth;
+        this.targetMillis = targetMillis;
+        this.listener = listener;
+        this.present = present;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "matchmaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::sweep,
+                SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add a player to be matched.  Safe to call from any thread.
+     *
+     * @param player the player
+     * @param rating the player's rating
+     * @param rows number of rows the player wants
+     * @param cols number of columns the player wants
+     * @return false if the matchmaker has been {@link #shutdown() shut
+     * down}, and the player was turned away
+     */
+    public boolean join(P player, int rating, int rows, int cols) {
+        if (this.closed) {
+            return false;
+        }
+        Queue<Ticket<P>>[] pool = pool(rows, cols);
+        Queue<Ticket<P>> bucket = pool[bucket(rating)];
+        Ticket<P> ticket = new Ticket<>(player, System.nanoTime());
+
+        Ticket<P> other = claim(bucket);
+        if (other != null) {
+            this.listener.matched(other.player, player, rows, cols);
+            return true;
+        }
+        bucket.add(ticket);
+        // a shutdown that drained the bands before the ticket went in
+        // would never see it, so take it back if nobody else has
+        return !this.closed || !ticket.taken.compareAndSet(false, true);
+    }
+
+    /**
+     * Stop the sweep, and take out every player still waiting.  Players
+     * who join after this are turned away.
+     *
+     * @return the players who were waiting, who will not be matched
+     */
+    public List<P> shutdown() {
+        this.closed = true;
+        this.sweeper.shutdownNow();
+        try {
+            // a sweep still running could put a player back after the drain
+            this.sweeper.awaitTermination(SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<P> left = new ArrayList<>();
+        for (Queue<Ticket<P>>[] pool : this.pools.values()) {
+            for (Queue<Ticket<P>> bucket : pool) {
+                Ticket<P> ticket;
+                while ((ticket = bucket.poll()) != null) {
+                    if (ticket.taken.compareAndSet(false, true)) {
+                        left.add(ticket.player);
+                    }
+                }
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Stop the sweep.  Players still waiting are not matched.
+     */
+    @Override
+    public void close() {
+        shutdown();
+    }
+
+    /**
+     * Get the bands for a board size, creating them if need be.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return the bands
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Queue<Ticket<P>>[] pool(int rows, int cols) {
+        return this.pools.computeIfAbsent((long) rows << 32 | cols, size -> {
+            Queue<Ticket<P>>[] pool = new Queue[MAX_RATING / this.bucketWidth + 1];
+            for (int i=0; i<pool.length; ++i) {
+                pool[i] = new ConcurrentLinkedQueue<>();
+            }
+            return pool;
+        });
+    }
+
+    /**
+     * Get the band for a rating.
+     *
+     * @param rating the rating
+     * @return the band number
+     */
+    private int bucket(int rating) {
+        return Math.max(0, Math.min(rating, MAX_RATING)) / this.bucketWidth;
+    }
+
+    /**
+     * Take the longest waiting player out of a band.  Players who have
+     * gone away are dropped on the way.
+     *
+     * @param bucket the band
+     * @return the player's ticket, or null if nobody is waiting
+     */
+    private Ticket<P> claim(Queue<Ticket<P>> bucket) {
+        Ticket<P> ticket;
+        while ((ticket = bucket.poll()) != null) {
+            if (ticket.taken.compareAndSet(false, true) && this.present.test(ticket.player)) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Pair up the players left waiting: first within each band, then, for
+     * those who have waited long enough, with nearby bands.
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        long target = TimeUnit.MILLISECONDS.toNanos(this.targetMillis);
+        for (Map.Entry<Long, Queue<Ticket<P>>[]> entry : this.pools.entrySet()) {
+            int rows = (int) (entry.getKey() >>> 32);
+            int cols = (int) (long) entry.getKey();
+            Queue<Ticket<P>>[] pool = entry.getValue();
+            for (int b=0; b<pool.length; ++b) {
+                Ticket<P> ticket;
+                while ((ticket = claim(pool[b])) != null) {
+                    // a player who has waited n targets may be matched n bands away
+                    int reach = (int) ((now - ticket.joined) / target);
+                    Ticket<P> other = nearest(pool, b, reach);
+                    if (other == null) {
+                        // nobody near enough yet; put it back for next time
+                        ticket.taken.set(false);
+                        pool[b].add(ticket);
+                        break;
+                    }
+                    if (other.joined < ticket.joined) {
+                        this.listener.matched(other.player, ticket.player, rows, cols);
+                    } else {
+                        this.listener.matched(ticket.player, other.player, rows, cols);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find a waiting player in or near a band.
+     *
+     * @param pool the bands
+     * @param b the band to start from
+     * @param reach how many bands either side may be looked in
+     * @return the nearest waiting player's ticket, or null if there is none
+     */
+    private Ticket<P> nearest(Queue<Ticket<P>>[] pool, int b, int reach) {
+        for (int d=0; d<=reach; ++d) {
+            if (b - d >= 0) {
+                Ticket<P> other = claim(pool[b - d]);
+                if (other != null) {
+                    return other;
+                }
+            }
+            if (d > 0 && b + d < pool.length) {
+                Ticket<P> other = claim(pool[b + d]);
+                if (other != null) {
+                    return other;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,409 @@
+package reversi.server;
+
+import reversi.Reversi;
+import reversi.ReversiException;
+import reversi.ReversiProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An {@link EventPlayer} on a non-blocking {@link SocketChannel}, run by an
+ * {@link EventLoop}.  Requests are queued in an output buffer until
+ * {@link #flush()}, and then written as the channel accepts them;
+ * responses are parsed straight out of the input buffer as whole lines
+ * arrive, and handed to the {@link ReversiGame}.<P>
+ *
+ * All methods are called on the event loop's thread.
+ */
+class NioPlayer implements ReversiProtocol, EventPlayer {
+    /** the longest line a client may send */
+    private static final int MAX_LINE = 256;
+    /** {@link #MOVE} and the space after it, as bytes */
+    private static final byte[] MOVE_PREFIX =
+            (MOVE + " ").getBytes(StandardCharsets.US_ASCII);
+
+    /** the connection to the client */
+    private SocketChannel channel;
+    /** the channel's registration with the event loop's selector */
+    private SelectionKey key;
+    /** bytes read from the client that have not been handled yet */
+    private ByteBuffer in = ByteBuffer.allocate(MAX_LINE);
+    /** bytes waiting to be written to the client */
+    private ByteBuffer out = ByteBuffer.allocate(MAX_LINE);
+    /** the game being played, or null while waiting for an opponent */
+    private ReversiGame game;
+    /** the other player in the game */
+    private NioPlayer opponent;
+    /** set when the connection should close once the output is written */
+    private boolean closing;
+
+    /**
+     * Creates a player for a channel that has been registered for reading.
+     *
+     * @param channel the connection to the client
+     * @param key the channel's registration
+     */
+    NioPlayer(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    /**
+     * Joins a game.
+     *
+     * @param game the game
+     * @param opponent the other player
+     */
+    void join(ReversiGame game, NioPlayer opponent) {
+        this.game = game;
+        this.opponent = opponent;
+    }
+
+    /**
+     * Is the connection still open?
+     *
+     * @return whether the channel is open
+     */
+    boolean isOpen() {
+        return this.channel.isOpen();
+    }
+
+    /**
+     * Called by the event loop when the channel has bytes to read.
+     *
+     * @throws IOException if the connection fails
+     */
+    void readable() throws IOException {
+        if (this.channel.read(this.in) < 0) {
+            disconnected();
+            return;
+        }
+        if (this.closing) {
+            // the game is over, and only the output is still wanted
+            this.in.clear();
+            return;
+        }
+        this.in.flip();
+        int start = this.in.position();
+        for (int i=start; i<this.in.limit(); ++i) {
+            if (this.in.get(i) == '\n') {
+                handleLine(start, i);
+                start = i + 1;
+                if (this.closing) {
+                    return;
+                }
+            }
+        }
+        this.in.position(start);
+        this.in.compact();
+        if (!this.in.hasRemaining()) {
+            endGame("Line too long");
+        }
+    }
+
+    /**
+     * Called by the event loop when the channel can take more bytes.
+     *
+     * @throws IOException if the connection fails
+     */
+    void writable() throws IOException {
+        write();
+    }
+
+    /**
+     * Called when the client hangs up or the connection fails.  The game,
+     * if any, ends with an error for the other player.
+     */
+    void disconnected() {
+        this.closing = true;
+        this.out.clear();
+        shut();
+        if (this.opponent != null && this.opponent.isOpen()) {
+            this.opponent.error("Opponent disconnected");
+            this.opponent.close();
+        }
+    }
+
+    /**
+     * Handles one line sent by the client.
+     *
+     * @param start index of the first byte of the line in the input buffer
+     * @param end index of the newline
+     */
+    private void handleLine(int start, int end) {
+        if (end > start && this.in.get(end - 1) == '\r') {
+            --end;
+        }
+        try {
+            if (this.game == null || !startsWith(start, end, MOVE_PREFIX)) {
+                throw new ReversiException("Invalid player response: " + text(start, end));
+            }
+            // MOVE row col
+            int i = start + MOVE_PREFIX.length;
+            int row = 0;
+            int col = 0;
+            int fields = 0;
+            boolean digits = false;
+            for (; i<=end; ++i) {
+                byte b = i < end ? this.in.get(i) : (byte) ' ';
+                if (b >= '0' && b <= '9') {
+                    col = col * 10 + (b - '0');
+                    digits = true;
+                    if (col > Reversi.MAX_DIM) {
+                        // off any board, and a long enough number would overflow
+                        fields = -1;
+                        break;
+                    }
+                } else if (b == ' ' && digits) {
+                    ++fields;
+                    if (fields == 1) {
+                        row = col;
+                        col = 0;
+                    }
+                    digits = false;
+                } else {
+                    fields = -1;
+                    break;
+                }
+            }
+            if (fields != 2) {
+                throw new ReversiException("Invalid player response: " + text(start, end));
+            }
+            if (this.game.moveReceived(this, row, col)) {
+                close();
+                this.opponent.close();
+            }
+        } catch (ReversiException e) {
+            endGame(e.getMessage());
+        }
+    }
+
+    /**
+     * Ends the game, or this connection if there is no game yet, with an
+     * error.
+     *
+     * @param message the error message
+     */
+    private void endGame(String message) {
+        if (this.game != null) {
+            this.game.error(message);
+            this.opponent.close();
+        } else {
+            error(message);
+        }
+        close();
+    }
+
+    /**
+     * Does part of the input buffer start with some bytes?
+     *
+     * @param start first byte to look at
+     * @param end one past the last byte to look at
+     * @param prefix the bytes to look for
+     * @return whether the bytes are there
+     */
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i=0; i<prefix.length; ++i) {
+            if (this.in.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets part of the input buffer as a string, for error messages.
+     *
+     * @param start first byte
+     * @param end one past the last byte
+     * @return the text
+     */
+    private String text(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i=0; i<bytes.length; ++i) {
+            bytes[i] = this.in.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes sure there is room for more output.
+     *
+     * @param bytes how many more bytes are needed
+     */
+    private void reserve(int bytes) {
+        if (this.out.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                    Math.max(this.out.capacity() * 2, this.out.position() + bytes));
+            this.out.flip();
+            bigger.put(this.out);
+            this.out = bigger;
+        }
+    }
+
+    /**
+     * Adds text to the output, encoded as UTF-8.  Requests are ASCII and
+     * are copied a byte at a time; error messages may quote names or
+     * exceptions, and only those need encoding.
+     *
+     * @param text the text
+     */
+    private void put(String text) {
+        for (int i=0; i<text.length(); ++i) {
+            if (text.charAt(i) >= 0x80) {
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                reserve(bytes.length);
+                this.out.put(bytes);
+                return;
+            }
+        }
+        reserve(text.length());
+        for (int i=0; i<text.length(); ++i) {
+            this.out.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Adds a space and a non-negative number to the output.
+     *
+     * @param n the number
+     */
+    private void putInt(int n) {
+        reserve(12);
+        this.out.put((byte) ' ');
+        int digits = 1;
+        for (int m=n/10; m>0; m/=10) {
+            digits *= 10;
+        }
+        for (; digits>0; digits/=10) {
+            this.out.put((byte) ('0' + n / digits % 10));
+        }
+    }
+
+    /**
+     * Ends a message.  It is written at the next {@link #flush()}.
+     */
+    private void send() {
+        reserve(1);
+        this.out.put((byte) '\n');
+    }
+
+    /**
+     * Writes as much output as the channel will take, and asks to be told
+     * when it can take the rest.
+     *
+     * @throws IOException if the connection fails
+     */
+    private void write() throws IOException {
+        if (!isOpen()) {
+            return;
+        }
+        this.out.flip();
+        if (this.out.hasRemaining()) {
+            WriteStats.wrote();
+            this.channel.write(this.out);
+        }
+        this.out.compact();
+        if (this.out.position() > 0) {
+            this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+        } else {
+            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (this.closing) {
+                shut();
+            }
+        }
+    }
+
+    /**
+     * Closes the channel right away.
+     */
+    private void shut() {
+        this.key.cancel();
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // squash
+        }
+    }
+
+    @Override
+    public void connect(int rows, int cols, Reversi.Rules rules) {
+        put(CONNECT);
+        putInt(rows);
+        putInt(cols);
+        if (rules == Reversi.Rules.STRICT) {
+            put(" " + STRICT);
+        }
+        send();
+        flush();
+    }
+
+    @Override
+    public void requestMove() {
+        put(MAKE_MOVE);
+        send();
+    }
+
+    @Override
+    public void moveMade(int row, int column, int[] flipped, int count) {
+        put(MOVE_MADE);
+        putInt(row);
+        putInt(column);
+        send();
+    }
+
+    @Override
+    public void passMade() {
+        put(PASS);
+        send();
+    }
+
+    @Override
+    public void gameWon() {
+        put(GAME_WON);
+        send();
+    }
+
+    @Override
+    public void gameTied() {
+        put(GAME_TIED);
+        send();
+    }
+
+    @Override
+    public void gameLost() {
+        put(GAME_LOST);
+        send();
+    }
+
+    @Override
+    public void error(String message) {
+        put(ERROR + " " + message);
+        send();
+    }
+
+    @Override
+    public void flush() {
+        try {
+            write();
+        } catch (IOException e) {
+            disconnected();
+        }
+    }
+
+    /**
+     * Closes the connection once everything queued for it has been written.
+     */
+    @Override
+    public void close() {
+        this.closing = true;
+        flush();
+    }
+}
@@ -0,0 +1,86 @@
+package reversi.server;
+
+import reversi.Reversi;
+
+import java.io.Closeable;
+
+/**
+ * The server's view of one of the two players in a {@link ReversiGame}.
+ * Each method sends the matching {@link reversi.ReversiProtocol} message
+ * to the player.  Apart from {@link #connect(int, int, Reversi.Rules)},
+ * which must get its message to the player before it returns, messages
+ * may be buffered until {@link #flush()} is called, so that everything
+ * sent in one game step goes in one write.<P>
+ *
+ * How a player is asked for its moves depends on how the game is played:
+ * a {@link BlockingPlayer} waits for each answer, and an
+ * {@link EventPlayer} hands it to the game when it arrives.
+ *
+ * @author Robert St Jacques @ RIT SE
+ * @author Sean Strout @ RIT CS
+ */
+public interface Player extends Closeable {
+    /**
+     * Sends the initial {@link reversi.ReversiProtocol#CONNECT} request.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param rules the rules the game is played under
+     */
+    void connect(int rows, int cols, Reversi.Rules rules);
+
+    /**
+     * Sends a {@link reversi.ReversiProtocol#MOVE_MADE} request to inform
+     * the player that a move has been made on the board.  The discs the
+     * move flipped are passed along too, for players who take a
+     * {@link reversi.BinaryProtocol#OP_BOARD_DELTA} instead.
+     *
+     * @param row The row in which the move has been made.
+     * @param column The column in which the move has been made.
+     * @param flipped The squares flipped by the move, packed as
+     *                <tt>row*cols+col</tt>.
+     * @param count How many squares were flipped.
+     */
+    void moveMade(int row, int column, int[] flipped, int count);
+
+    /**
+     * Sends a {@link reversi.ReversiProtocol#PASS} request to inform the
+     * player that the player whose turn it was has no legal move, and so
+     * the other player moves again.
+     */
+    void passMade();
+
+    /**
+     * Sends a {@link reversi.ReversiProtocol#GAME_WON} request.
+     */
+    void gameWon();
+
+    /**
+     * Sends a {@link reversi.ReversiProtocol#GAME_TIED} request.
+     */
+    void gameTied();
+
+    /**
+     * Sends a {@link reversi.ReversiProtocol#GAME_LOST} request.
+     */
+    void gameLost();
+
+    /**
+     * Sends an {@link reversi.ReversiProtocol#ERROR}.
+     *
+     * @param message The error message.
+     */
+    void error(String message);
+
+    /**
+     * Sends any messages that are waiting in the output buffer.
+     */
+    void flush();
+
+    /**
+     * Sends anything still buffered, and closes the connection to the
+     * player after the game is over.
+     */
+    @Override
+    void close();
+}
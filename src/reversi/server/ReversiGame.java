@@ -2,58 +2,247 @@ package reversi.server;
 
 import reversi.Reversi;
 import reversi.ReversiException;
+import reversi.archive.GameLog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The server side representation of the game state and players in the game.
+ * A game between {@link BlockingPlayer}s is played start to finish by
+ * {@link #run()}, which waits on each player in turn.  A game between
+ * {@link EventPlayer}s is driven one move at a time by an event driven
+ * server through {@link #start()} and
+ * {@link #moveReceived(EventPlayer, int, int)}.
  *
  * @author Robert St Jacques @ RIT SE
  * @author Sean Strout @ RIT CS
  */
 public class ReversiGame {
     /** first player */
-    private ReversiPlayer playerOne;
+    private Player playerOne;
     /** second player */
-    private ReversiPlayer playerTwo;
+    private Player playerTwo;
+    /** the players, if the game is played by {@link #run()}, else null */
+    private BlockingPlayer blockingOne, blockingTwo;
+    /** the players, if the game is driven by events, else null */
+    private EventPlayer eventOne, eventTwo;
     /** the game board */
     private Reversi game;
+    /** whose move the game is waiting for, when driven by events */
+    private EventPlayer turn;
+    /** the squares flipped by the last move */
+    private int[] flipped;
+    /** who is watching the game, or null if it is not being watched */
+    private Spectators spectators;
+    /** the players' clocks, or null if moves are not timed */
+    private GameClock clock;
+    /** runs out the clock */
+    private HashedWheelTimer timer;
+    /** where the game is recorded when it ends, or null */
+    private GameLog log;
+    /** the players' ids, for the log */
+    private String playerOneId, playerTwoId;
+    /** how the game ended, as a {@link GameLog} result */
+    private int result = GameLog.UNFINISHED;
+
+    /**
+     * Create the server side game, played by {@link #run()} under the
+     * relaxed rules.
+     *
+     * @param playerOne first player
+     * @param playerTwo second player
+     */
+    public ReversiGame(int rows, int cols, BlockingPlayer playerOne,
+                       BlockingPlayer playerTwo) {
+        this(rows, cols, Reversi.Rules.RELAXED, playerOne, playerTwo);
+    }
+
+    /**
+     * Create the server side game, played by {@link #run()}.
+     *
+     * @param rules the rules the game is played under
+     * @param playerOne first player
+     * @param playerTwo second player
+     */
+    public ReversiGame(int rows, int cols, Reversi.Rules rules, BlockingPlayer playerOne,
+                       BlockingPlayer playerTwo) {
+        setUp(rows, cols, rules, playerOne, playerTwo);
+        this.blockingOne = playerOne;
+        this.blockingTwo = playerTwo;
+    }
+
+    /**
+     * Create the server side game, driven by events under the relaxed
+     * rules.
+     *
+     * @param playerOne first player
+     * @param playerTwo second player
+     */
+    public ReversiGame(int rows, int cols, EventPlayer playerOne, EventPlayer playerTwo) {
+        this(rows, cols, Reversi.Rules.RELAXED, playerOne, playerTwo);
+    }
+
+    /**
+     * Create the server side game, driven by events.
+     *
+     * @param rules the rules the game is played under
+     * @param playerOne first player
+     * @param playerTwo second player
+     */
+    public ReversiGame(int rows, int cols, Reversi.Rules rules, EventPlayer playerOne,
+                       EventPlayer playerTwo) {
+        setUp(rows, cols, rules, playerOne, playerTwo);
+        this.eventOne = playerOne;
+        this.eventTwo = playerTwo;
+    }
 
     /**
-     * Create the server side game.
+     * Set up the board and the players.
      *
+     * @param rules the rules the game is played under
      * @param playerOne first player
      * @param playerTwo second player
      */
-    public ReversiGame(int rows, int cols, ReversiPlayer playerOne, ReversiPlayer playerTwo) {
+    private void setUp(int rows, int cols, Reversi.Rules rules, Player playerOne,
+                       Player playerTwo) {
         this.playerOne = playerOne;
         this.playerTwo = playerTwo;
-        this.game = new Reversi(rows, cols);
+        this.game = new Reversi(rows, cols, rules);
+        this.flipped = new int[rows * cols];
+    }
+
+    /**
+     * Let spectators watch the game.  Every move and the result are sent
+     * to them as well as to the players.
+     *
+     * @param spectators the spectators
+     */
+    public void setSpectators(Spectators spectators) {
+        this.spectators = spectators;
+    }
+
+    /**
+     * Time the players' moves.  A player who runs out of time loses the
+     * game.  Only games played by {@link #run()} are timed.
+     *
+     * @param clock the players' clocks, used only by this game
+     * @param timer runs out the clock; it may be shared by many games
+     */
+    public void setClock(GameClock clock, HashedWheelTimer timer) {
+        this.clock = clock;
+        this.timer = timer;
+    }
+
+    /**
+     * Record the game in a {@link GameLog} when it ends.
+     *
+     * @param log the log
+     * @param playerOneId player one's id
+     * @param playerTwoId player two's id
+     */
+    public void setLog(GameLog log, String playerOneId, String playerTwoId) {
+        this.log = log;
+        this.playerOneId = playerOneId;
+        this.playerTwoId = playerTwoId;
     }
 
     /**
      * Conduct the gameplay.
+     *
+     * @throws IllegalStateException if the game is driven by events
      */
     public void run() {
+        if(this.blockingOne == null) {
+            throw new IllegalStateException("Game is driven by events");
+        }
         boolean go = true;
         while(go) {
             try {
-                if(makeMove(this.playerOne, this.playerTwo)) {
-                    go = false;
-                }
-                else if(makeMove(this.playerTwo, this.playerOne)) {
+                // a player who had to pass is skipped
+                BlockingPlayer turn = blockingMover();
+                if(makeMove(turn, turn == this.playerOne ? this.playerTwo : this.playerOne)) {
                     go = false;
                 }
             }
             catch(ReversiException e) {
-                this.playerOne.error(e.getMessage());
-                this.playerTwo.error(e.getMessage());
+                error(e.getMessage());
                 go = false;
             }
         }
 
+        record();
         this.playerOne.close();
         this.playerTwo.close();
     }
 
+    /**
+     * Start an event driven game by asking player one for a move.
+     *
+     * @throws IllegalStateException if the game is played by {@link #run()}
+     */
+    public void start() {
+        if(this.eventOne == null) {
+            throw new IllegalStateException("Game is played by run()");
+        }
+        this.turn = eventMover();
+        this.turn.requestMove();
+        this.turn.flush();
+    }
+
+    /**
+     * Called by an event driven server when a player's answer to
+     * {@link EventPlayer#requestMove()} arrives.  The move is made, and either
+     * the game ends or the other player is asked for a move.
+     *
+     * @param from the player who sent the move
+     * @param row the row of the move
+     * @param col the column of the move
+     * @return whether the game ended on this move
+     * @throws ReversiException if the move is invalid or it is not the
+     * player's turn
+     */
+    public boolean moveReceived(EventPlayer from, int row, int col)
+        throws ReversiException {
+
+        if(from != this.turn) {
+            throw new ReversiException("Move out of turn: " +
+                    "(" + row + ", " + col + ")");
+        }
+        Player other = from == this.playerOne ? this.playerTwo : this.playerOne;
+        boolean over = applyMove(from, other, row, col);
+        if(!over) {
+            this.turn = eventMover();
+            this.turn.requestMove();
+        }
+        // the whole step goes out in one write to each player
+        from.flush();
+        other.flush();
+        if(over) {
+            record();
+        }
+        return over;
+    }
+
+    /**
+     * Tell both players that the game cannot go on.
+     *
+     * @param message the error message
+     */
+    public void error(String message) {
+        if(this.spectators != null) {
+            this.spectators.error(message);
+        }
+        this.playerOne.error(message);
+        this.playerTwo.error(message);
+        this.playerOne.flush();
+        this.playerTwo.flush();
+        if(this.turn != null) {
+            // an event driven game ends here
+            record();
+        }
+    }
+
     /**
      * Make a single move in the game.
      *
@@ -62,36 +251,195 @@ public class ReversiGame {
      * @return whether the game ended or not on this move
      * @throws ReversiException if there is any game playing problem
      */
-    private boolean makeMove(ReversiPlayer turn, ReversiPlayer other)
+    private boolean makeMove(BlockingPlayer turn, Player other)
         throws ReversiException {
 
-        // get the move from the player whose turn it is
-        int[] coord = turn.makeMove();
-        this.game.makeMove(coord[0], coord[1]);
+        // get the move from the player whose turn it is; the move made
+        // message to the other player waits to go out with its own
+        // move request, or with the result
+        int[] coord = this.clock == null ? turn.makeMove() : timedMove(turn);
+        if(coord == null) {
+            forfeit(turn, other);
+            return true;
+        }
+        boolean over = applyMove(turn, other, coord[0], coord[1]);
+        turn.flush();
+        if(over || mover() == turn) {
+            // the other player is not about to be asked for a move
+            other.flush();
+        }
+        return over;
+    }
+
+    /**
+     * Get the player whose turn it is.
+     *
+     * @return the player to move
+     */
+    private Player mover() {
+        return this.game.getTurn() == Reversi.Move.PLAYER_ONE ?
+                this.playerOne : this.playerTwo;
+    }
+
+    /**
+     * Get the player whose turn it is in a game played by {@link #run()}.
+     *
+     * @return the player to move
+     */
+    private BlockingPlayer blockingMover() {
+        return this.game.getTurn() == Reversi.Move.PLAYER_ONE ?
+                this.blockingOne : this.blockingTwo;
+    }
+
+    /**
+     * Get the player whose turn it is in an event driven game.
+     *
+     * @return the player to move
+     */
+    private EventPlayer eventMover() {
+        return this.game.getTurn() == Reversi.Move.PLAYER_ONE ?
+                this.eventOne : this.eventTwo;
+    }
+
+    /**
+     * Get a move from a player against the clock.  When the player's time
+     * runs out the timer cancels the wait; whichever of the move and the
+     * timer gets there first decides the outcome.
+     *
+     * @param turn the player whose turn it currently is
+     * @return the row and column of the move, or null if time ran out
+     * @throws ReversiException if the player's response is invalid
+     */
+    private int[] timedMove(BlockingPlayer turn) throws ReversiException {
+        int player = turn == this.playerOne ? 0 : 1;
+        AtomicBoolean waiting = new AtomicBoolean(true);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = this.timer.schedule(() -> {
+            if(waiting.compareAndSet(true, false)) {
+                turn.cancelMove();
+            }
+        }, this.clock.allowed(player), TimeUnit.MILLISECONDS);
+
+        int[] coord;
+        try {
+            coord = turn.makeMove();
+        }
+        catch(ReversiException e) {
+            if(!waiting.get()) {
+                // the wait was cancelled
+                return null;
+            }
+            throw e;
+        }
+        finally {
+            timeout.cancel();
+        }
+        if(!waiting.compareAndSet(true, false)) {
+            // the move came in just as time ran out
+            return null;
+        }
+        this.clock.moved(player, (System.nanoTime() - start) / 1000000);
+        return coord;
+    }
+
+    /**
+     * End the game because a player ran out of time.
+     *
+     * @param loser the player who ran out of time
+     * @param winner the other player
+     */
+    private void forfeit(Player loser, Player winner) {
+        this.result = winner == this.playerOne ?
+                GameLog.PLAYER_ONE_WON : GameLog.PLAYER_TWO_WON;
+        loser.gameLost();
+        winner.gameWon();
+        if(this.spectators != null) {
+            this.spectators.gameWon(winner == this.playerOne ? 1 : 2);
+        }
+        loser.flush();
+        winner.flush();
+    }
+
+    /**
+     * Write the game to the log, if there is one.  The moves are taken
+     * from the board, which has kept them all.
+     */
+    private void record() {
+        if(this.log != null) {
+            int[] moves = new int[this.game.getRows() * this.game.getCols()];
+            int count = this.game.getMoves(moves);
+            this.log.log(this.game.getRows(), this.game.getCols(),
+                    this.game.getRules(), this.playerOneId, this.playerTwoId,
+                    this.result, moves, count);
+            this.log = null;
+        }
+    }
+
+    /**
+     * Make a move on the board, tell both players about it and see if it
+     * ended the game.  If it did not, and the next player has no legal
+     * move, the pass is made and both players are told about that too.
+     *
+     * @param turn the player whose turn it currently is
+     * @param other the other player
+     * @param row the row of the move
+     * @param col the column of the move
+     * @return whether the game ended or not on this move
+     * @throws ReversiException if the move is invalid
+     */
+    private boolean applyMove(Player turn, Player other, int row, int col)
+        throws ReversiException {
+
+        this.game.makeMove(row, col);
+        WriteStats.moved();
 
         // communicate the move to both players
-        turn.moveMade(coord[0], coord[1]);
-        other.moveMade(coord[0], coord[1]);
+        int count = this.game.lastFlips(this.flipped);
+        turn.moveMade(row, col, this.flipped, count);
+        other.moveMade(row, col, this.flipped, count);
+        if(this.spectators != null) {
+            this.spectators.moveMade(row, col);
+        }
 
         // check if the game ended on this move
         if(this.game.gameOver()) {
             // determine winner
             switch (this.game.getWinner()) {
                 case NONE:
+                    this.result = GameLog.TIED;
                     turn.gameTied();
                     other.gameTied();
+                    if(this.spectators != null) {
+                        this.spectators.gameTied();
+                    }
                     break;
                 case PLAYER_ONE:
-                    other.gameWon();
-                    turn.gameLost();
+                    this.result = GameLog.PLAYER_ONE_WON;
+                    this.playerOne.gameWon();
+                    this.playerTwo.gameLost();
+                    if(this.spectators != null) {
+                        this.spectators.gameWon(1);
+                    }
                     break;
                 case PLAYER_TWO:
-                    turn.gameWon();
-                    other.gameLost();
+                    this.result = GameLog.PLAYER_TWO_WON;
+                    this.playerTwo.gameWon();
+                    this.playerOne.gameLost();
+                    if(this.spectators != null) {
+                        this.spectators.gameWon(2);
+                    }
             }
             return true;
         }
         else {
+            if(this.game.mustPass()) {
+                this.game.pass();
+                turn.passMade();
+                other.passMade();
+                if(this.spectators != null) {
+                    this.spectators.passMade();
+                }
+            }
             return false;
         }
     }
@@ -0,0 +1,137 @@
+package reversi.server;
+
+import reversi.ReversiException;
+import reversi.ReversiProtocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link ReversiServer} alternative that serves any number of games from
+ * a handful of threads.  Instead of a thread blocked on every connection,
+ * a few {@link EventLoop}s each wait on a {@link java.nio.channels.Selector}
+ * for whichever of their connections are ready, and drive each
+ * {@link ReversiGame} a move at a time as the players' answers arrive.<P>
+ *
+ * Clients speak the same {@link ReversiProtocol} as with
+ * {@link ReversiServer}, so they cannot tell the two apart.
+ */
+public class ReversiNioServer implements ReversiProtocol, Closeable {
+    /**
+     * The {@link ServerSocketChannel} used to wait for incoming client
+     * connections.
+     */
+    private ServerSocketChannel server;
+
+    /** the event loops the connections are shared between */
+    private EventLoop[] loops;
+
+    /**
+     * Set once the server is closing, so that the accept loop knows the
+     * failure of {@link ServerSocketChannel#accept()} is expected, and so
+     * that only the first call of {@link #close()} does anything.
+     */
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    /**
+     * Creates a new {@link ReversiNioServer} that listens for incoming
+     * connections on the specified port.
+     *
+     * @param port The port on which the server should listen for incoming
+     *             connections.
+     * @param threads How many event loop threads to serve games with.
+     * @throws ReversiException If there is an error creating the
+     *                          {@link ServerSocketChannel}
+     */
+    public ReversiNioServer(int port, int threads) throws ReversiException {
+        try {
+            this.server = ServerSocketChannel.open();
+            this.server.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            throw new ReversiException(e);
+        }
+        this.loops = new EventLoop[threads];
+    }
+
+    /**
+     * Closes the {@link ServerSocketChannel} and stops the event loops,
+     * which ends every game in progress.  Calling this again, say from a
+     * shutdown hook, does nothing.
+     */
+    @Override
+    public void close() {
+        if (!this.closing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            this.server.close();
+        } catch (IOException ioe) {
+            // squash
+        }
+        for (EventLoop loop : this.loops) {
+            if (loop != null) {
+                loop.close();
+            }
+        }
+    }
+
+    /**
+     * Starts the event loops, then accepts connections on the calling
+     * thread until the server is closed.  Each pair of connections is
+     * handed to the next loop in turn, where the two are paired off in a
+     * {@link ReversiGame}.
+     *
+     * @param rows number of rows in each board
+     * @param cols number of columns in each board
+     */
+    public void run(int rows, int cols) {
+        try {
+            for (int i=0; i<this.loops.length; ++i) {
+                this.loops[i] = new EventLoop(rows, cols);
+                Thread thread = new Thread(this.loops[i], "reversi-loop-" + i);
+                thread.start();
+            }
+
+            long accepted = 0;
+            while (!this.closing.get()) {
+                SocketChannel channel = this.server.accept();
+                // both players of a game go to the same loop
+                this.loops[(int) (accepted++ / 2 % this.loops.length)].add(channel);
+            }
+        } catch (IOException e) {
+            if (!this.closing.get()) {
+                System.err.println("Something has gone horribly wrong!");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Starts a new {@link ReversiNioServer}. Simply creates the server and
+     * calls {@link #run(int, int)}
+     *
+     * @param args the board size, the port on which the server should
+     *             listen for incoming client connections, and the number
+     *             of event loop threads
+     */
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.out.println("Usage: java ReversiNioServer #_rows #_cols port #_threads");
+            System.exit(1);
+        }
+
+        try (ReversiNioServer server = new ReversiNioServer(
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]))) {
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.run(Integer.parseInt(args[0]),
+                    Integer.parseInt(args[1]));
+        } catch (ReversiException e) {
+            System.err.println("Failed to start server!");
+            e.printStackTrace();
+        }
+    }
+}
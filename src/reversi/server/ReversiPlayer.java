@@ -1,13 +1,23 @@
 package reversi.server;
 
+import reversi.BinaryDecoder;
+import reversi.BinaryEncoder;
+import reversi.BinaryProtocol;
+import reversi.ProtocolReader;
+import reversi.Reversi;
 import reversi.ReversiException;
 import reversi.ReversiProtocol;
 
-import java.io.Closeable;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.Socket;
-import java.util.Scanner;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 
 /**
  * A class that manages the requests and responses to a single client.
@@ -15,20 +25,66 @@ import java.util.Scanner;
  * @author Robert St Jacques @ RIT SE
  * @author Sean Strout @ RIT CS
  */
-public class ReversiPlayer implements ReversiProtocol, Closeable {
+public class ReversiPlayer implements ReversiProtocol, BlockingPlayer {
+    /**
+     * How long to wait for the answer to a binary protocol offer before
+     * deciding the client predates it and speaks only text.
+     */
+    private static final int HANDSHAKE_MILLIS = 2000;
+
+    /**
+     * How long a client of a matchmaking server has to send its
+     * {@link #JOIN} or {@link #WATCH} request after connecting.
+     */
+    private static final int JOIN_MILLIS = 10000;
+
     /** The {@link Socket} used to communicate with the client. */
     private Socket sock;
 
     /**
-     * The {@link Scanner} used to read responses from the client.
+     * The {@link ProtocolReader} used to read responses from the client.
      */
-    private Scanner scanner;
+    private ProtocolReader reader;
 
     /**
-     * The {@link PrintStream} used to send requests to the client.
+     * The socket's output, counting each write in {@link WriteStats}.
+     */
+    private OutputStream out;
+
+    /**
+     * The {@link PrintStream} used to send requests to the client.  It is
+     * buffered, and only written out by {@link #flush()}.
      */
     private PrintStream printer;
 
+    /**
+     * The {@link BinaryEncoder} used to send requests to the client, or null
+     * if the client speaks the text protocol.
+     */
+    private BinaryEncoder encoder;
+
+    /**
+     * The {@link BinaryDecoder} used to read responses from the client, or
+     * null if the client speaks the text protocol.
+     */
+    private BinaryDecoder decoder;
+
+    /** The player's rating, as given in its {@link #JOIN} request. */
+    private int rating;
+
+    /**
+     * Whether the client chose {@link BinaryProtocol#DELTA_VERSION}, and so
+     * is sent board deltas instead of moves made.
+     */
+    private boolean deltas;
+
+    /**
+     * Something that writes a binary frame.
+     */
+    private interface Frame {
+        void write() throws IOException;
+    }
+
     /**
      * Creates a new {@link ReversiPlayer} that will use the specified
      * {@link Socket} to communicate with the client.
@@ -41,8 +97,18 @@ public class ReversiPlayer implements ReversiProtocol, Closeable {
     public ReversiPlayer(Socket sock) throws ReversiException {
         this.sock = sock;
         try {
-            this.scanner = new Scanner(sock.getInputStream());
-            this.printer = new PrintStream(sock.getOutputStream());
+            // each game step is one write, so there is nothing to gain by
+            // holding it back until the last is acknowledged
+            sock.setTcpNoDelay(true);
+            this.reader = new ProtocolReader(sock.getInputStream());
+            this.out = new FilterOutputStream(sock.getOutputStream()) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    WriteStats.wrote();
+                    this.out.write(b, off, len);
+                }
+            };
+            this.printer = new PrintStream(new BufferedOutputStream(this.out));
         }
         catch (IOException e) {
             throw new ReversiException(e);
@@ -54,9 +120,193 @@ public class ReversiPlayer implements ReversiProtocol, Closeable {
      *
      * @param rows number of rows in board
      * @param cols number of columns in board
+     * @param rules the rules the game is played under
+     */
+    @Override
+    public void connect(int rows, int cols, Reversi.Rules rules) {
+        this.printer.println(CONNECT + " " + rows + " " + cols + rulesArgument(rules));
+        this.printer.flush();
+    }
+
+    /**
+     * Get what goes on the end of the {@link #CONNECT} request for the
+     * rules a game is played under.
+     *
+     * @param rules the rules
+     * @return " {@link #STRICT}" for the strict rules, otherwise nothing,
+     * so that older clients still understand a relaxed game
+     */
+    private static String rulesArgument(Reversi.Rules rules) {
+        return rules == Reversi.Rules.STRICT ? " " + STRICT : "";
+    }
+
+    /**
+     * Sends the initial {@link #CONNECT} request to the client, optionally
+     * offering the {@link BinaryProtocol binary protocol}.  If it is
+     * offered, the client's {@link BinaryProtocol#PROTOCOL} answer is read
+     * and all further messages use the version it chose.  A client that
+     * does not answer within {@link #HANDSHAKE_MILLIS} is taken to be an
+     * older one that speaks only text.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param rules the rules the game is played under
+     * @param offerBinary whether to offer binary frames
+     *
+     * @throws ReversiException If the client does not answer the offer
+     * properly.
+     */
+    public void connect(int rows, int cols, Reversi.Rules rules, boolean offerBinary)
+            throws ReversiException {
+        if(!offerBinary) {
+            connect(rows, cols, rules);
+            return;
+        }
+        this.printer.println(CONNECT + " " + rows + " " + cols + " " +
+                BinaryProtocol.DELTA_VERSION + rulesArgument(rules));
+        this.printer.flush();
+
+        try {
+            // read the answer straight off the socket, so that no frames
+            // that follow it end up in the reader's buffer
+            String response;
+            this.sock.setSoTimeout(HANDSHAKE_MILLIS);
+            try {
+                response = readLine(this.sock.getInputStream());
+            }
+            catch (SocketTimeoutException e) {
+                response = BinaryProtocol.PROTOCOL + " " + BinaryProtocol.TEXT_VERSION;
+            }
+            finally {
+                this.sock.setSoTimeout(0);
+            }
+            if(response.equals(BinaryProtocol.PROTOCOL + " " + BinaryProtocol.BINARY_VERSION) ||
+                    response.equals(BinaryProtocol.PROTOCOL + " " + BinaryProtocol.DELTA_VERSION)) {
+                this.encoder = new BinaryEncoder(this.out);
+                this.decoder = new BinaryDecoder(this.sock.getInputStream());
+                this.deltas = response.endsWith(" " + BinaryProtocol.DELTA_VERSION);
+            }
+            else if(!response.equals(BinaryProtocol.PROTOCOL + " " + BinaryProtocol.TEXT_VERSION)) {
+                throw new ReversiException("Invalid protocol response: " + response);
+            }
+        }
+        catch (IOException e) {
+            throw new ReversiException(e);
+        }
+    }
+
+    /**
+     * Reads a line of text a byte at a time.
+     *
+     * @param in where to read from
+     * @return the line, without the line ending
+     * @throws IOException if the stream fails or ends first
      */
-    public void connect(int rows, int cols) {
-        this.printer.println(CONNECT + " " + rows + " " + cols);
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while((b = in.read()) != '\n') {
+            if(b < 0) {
+                throw new IOException("Connection closed");
+            }
+            if(b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Writes a binary frame into the output buffer.  Like the
+     * {@link PrintStream} used for text, a failure is not reported here; it
+     * shows up as a failure to read the client's next response.
+     *
+     * @param frame writes the frame
+     */
+    private void send(Frame frame) {
+        try {
+            frame.write();
+        }
+        catch (IOException e) {
+            // squash
+        }
+    }
+
+    /**
+     * Reads the {@link #JOIN} request a client sends to a matchmaking
+     * server, or the {@link #WATCH} request a spectator sends instead.
+     *
+     * @param rows number of rows to use if the client does not ask
+     * @param cols number of columns to use if the client does not ask
+     * @return The player's rating, then the rows and columns wanted; or,
+     * for a spectator, just the number of the game to watch (0 for the
+     * top rated game).
+     *
+     * @throws ReversiException If the request is not {@link #JOIN} with a
+     * rating and, optionally, a board size between
+     * {@link Reversi#MIN_DIM} and {@link Reversi#MAX_DIM}, or
+     * {@link #WATCH} with, optionally, a game number, or if it does not
+     * arrive within {@link #JOIN_MILLIS}.
+     */
+    public int[] join(int rows, int cols) throws ReversiException {
+        String request;
+        try {
+            this.sock.setSoTimeout(JOIN_MILLIS);
+            try {
+                request = this.reader.next();
+            }
+            finally {
+                this.sock.setSoTimeout(0);
+            }
+        }
+        catch (IOException e) {
+            throw new ReversiException("No join request", e);
+        }
+        if(request == null) {
+            throw new ReversiException("No join request");
+        }
+
+        if(request == JOIN && this.reader.argCount() == 1) {
+            this.rating = this.reader.arg(0);
+            return new int[] {this.rating, rows, cols};
+        }
+        else if(request == JOIN && this.reader.argCount() == 3) {
+            int r = this.reader.arg(1);
+            int c = this.reader.arg(2);
+            if(r < Reversi.MIN_DIM || r > Reversi.MAX_DIM ||
+                    c < Reversi.MIN_DIM || c > Reversi.MAX_DIM) {
+                throw new ReversiException("Invalid board size: " + r + "x" + c);
+            }
+            this.rating = this.reader.arg(0);
+            return new int[] {this.rating, r, c};
+        }
+        else if(request == WATCH && this.reader.argCount() == 0) {
+            return new int[] {0};
+        }
+        else if(request == WATCH && this.reader.argCount() == 1) {
+            return new int[] {this.reader.arg(0)};
+        }
+        throw new ReversiException("Invalid join request: " + this.reader.line());
+    }
+
+    /**
+     * Gets an id for the player, for the game log.  The protocol has no
+     * accounts, so this is the address and port the client connected from.
+     *
+     * @return the id
+     */
+    public String getId() {
+        return this.sock.getInetAddress().getHostAddress() + ":" + this.sock.getPort();
+    }
+
+    /**
+     * Gets the player's rating.
+     *
+     * @return the rating from the {@link #JOIN} request, or 0 if there was
+     * none
+     */
+    public int getRating() {
+        return this.rating;
     }
 
     /**
@@ -68,61 +318,151 @@ public class ReversiPlayer implements ReversiProtocol, Closeable {
      * @throws ReversiException If the client's response is invalid, i.e.
      * not {@link #MOVE} and a column number.
      */
+    @Override
     public int[] makeMove() throws ReversiException {
-        this.printer.println(MAKE_MOVE);
-        String response = scanner.nextLine();
-
-        if(response.startsWith(MOVE)) {
-            String[] tokens = response.split(" ");
-            if(tokens.length == 3) {
-                int[] coord = new int[2];
-                coord[0] = Integer.parseInt(tokens[1]);
-                coord[1] = Integer.parseInt(tokens[2]);
-                return coord;
+        requestMove();
+        flush();
+        if(this.decoder != null) {
+            try {
+                int op = this.decoder.next();
+                if(op == BinaryProtocol.OP_MOVE) {
+                    return new int[] {this.decoder.row(), this.decoder.col()};
+                }
+                throw new ReversiException("Invalid player response: opcode " + op);
             }
-            else {
-                throw new ReversiException("Invalid player response: " +
-                        response);
+            catch (IOException e) {
+                throw new ReversiException(e);
             }
         }
+
+        String response;
+        try {
+            response = this.reader.next();
+        }
+        catch (IOException e) {
+            throw new ReversiException(e);
+        }
+        if(response == null) {
+            throw new ReversiException("Player disconnected");
+        }
+
+        // the reader hands back the protocol's own constants
+        if(response == MOVE && this.reader.argCount() == 2) {
+            int[] coord = new int[2];
+            coord[0] = this.reader.arg(0);
+            coord[1] = this.reader.arg(1);
+            return coord;
+        }
         else {
             throw new ReversiException("Invalid player response: " +
-                    response);
+                    this.reader.line());
+        }
+    }
+
+    /**
+     * Shuts down the input side of the socket, so that a read waiting in
+     * {@link #makeMove()} ends as if the client had hung up.  The output
+     * side stays open for the result.
+     */
+    @Override
+    public void cancelMove() {
+        try {
+            this.sock.shutdownInput();
+        }
+        catch (IOException e) {
+            // squash
+        }
+    }
+
+    /**
+     * Puts a {@link #MAKE_MOVE} request in the output buffer.
+     */
+    private void requestMove() {
+        if(this.encoder != null) {
+            send(() -> this.encoder.makeMove());
+        }
+        else {
+            this.printer.println(MAKE_MOVE);
         }
     }
 
     /**
      * Sends a {@link #MOVE_MADE} request to the client to inform the client
-     * that a move has been made on the board.
+     * that a move has been made on the board, or a
+     * {@link BinaryProtocol#OP_BOARD_DELTA} if the client takes those.
      *
+     * @param row The row in which the move has been made.
      * @param column The column in which the move has been made.
+     * @param flipped The squares flipped by the move.
+     * @param count How many squares were flipped.
      */
-    public void moveMade(int row, int column) {
-        this.printer.println(MOVE_MADE + " " + row + " " + column);
+    @Override
+    public void moveMade(int row, int column, int[] flipped, int count) {
+        if(this.deltas) {
+            send(() -> this.encoder.boardDelta(row, column, flipped, count));
+        }
+        else if(this.encoder != null) {
+            send(() -> this.encoder.moveMade(row, column));
+        }
+        else {
+            this.printer.println(MOVE_MADE + " " + row + " " + column);
+        }
+    }
+
+    /**
+     * Called to send a {@link #PASS} request to the client to inform it
+     * that the player whose turn it was cannot move.
+     */
+    @Override
+    public void passMade() {
+        if(this.encoder != null) {
+            send(() -> this.encoder.pass());
+        }
+        else {
+            this.printer.println(PASS);
+        }
     }
 
     /**
      * Called to send a {@link #GAME_WON} request to the client because the
      * player's most recent move won the game.
      */
+    @Override
     public void gameWon() {
-        this.printer.println(GAME_WON);
+        if(this.encoder != null) {
+            send(() -> this.encoder.gameWon());
+        }
+        else {
+            this.printer.println(GAME_WON);
+        }
     }
 
     /**
      * Called to send a {@link #GAME_WON} request to the client because the
      * player's most recent move won the game.
      */
+    @Override
     public void gameTied() {
-        this.printer.println(GAME_TIED);
+        if(this.encoder != null) {
+            send(() -> this.encoder.gameTied());
+        }
+        else {
+            this.printer.println(GAME_TIED);
+        }
     }
 
     /**
      * Called to send a {@link #GAME_LOST} request to the client because the
      * other player's most recent move wont the game.
      */
+    @Override
     public void gameLost()  {
-        this.printer.println(GAME_LOST);
+        if(this.encoder != null) {
+            send(() -> this.encoder.gameLost());
+        }
+        else {
+            this.printer.println(GAME_LOST);
+        }
     }
 
     /**
@@ -131,8 +471,66 @@ public class ReversiPlayer implements ReversiProtocol, Closeable {
      *
      * @param message The error message.
      */
+    @Override
     public void error(String message) {
-        this.printer.println(ERROR + " " + message);
+        if(this.encoder != null) {
+            send(() -> this.encoder.error(message));
+        }
+        else {
+            this.printer.println(ERROR + " " + message);
+        }
+    }
+
+    /**
+     * Checks, without waiting, whether a client that should have nothing to
+     * say, such as one waiting to be matched, has hung up.  Anything the
+     * client does send is out of turn, so that counts as hanging up too.  A
+     * client that has hung up is hung up on in turn.  A connection that
+     * did not come from a {@link java.nio.channels.ServerSocketChannel} can
+     * only be checked by reading, so it is assumed to be there unless it
+     * has been closed.
+     *
+     * @return whether the client has gone
+     */
+    public boolean hasHungUp() {
+        if (this.sock.isClosed()) {
+            return true;
+        }
+        SocketChannel channel = this.sock.getChannel();
+        if (channel == null) {
+            return false;
+        }
+        int read;
+        try {
+            synchronized (channel.blockingLock()) {
+                channel.configureBlocking(false);
+                try {
+                    read = channel.read(ByteBuffer.allocate(1));
+                } finally {
+                    channel.configureBlocking(true);
+                }
+            }
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read != 0) {
+            close();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends everything in the output buffer to the client in one write.
+     */
+    @Override
+    public void flush() {
+        if(this.encoder != null) {
+            send(() -> this.encoder.flush());
+        }
+        else {
+            this.printer.flush();
+        }
     }
 
     /**
@@ -140,6 +538,7 @@ public class ReversiPlayer implements ReversiProtocol, Closeable {
      */
     @Override
     public void close() {
+        flush();
         try {
             this.sock.close();
         }
@@ -1,12 +1,27 @@
 package reversi.server;
 
+import reversi.Reversi;
 import reversi.ReversiException;
 import reversi.ReversiProtocol;
+import reversi.archive.GameLog;
+import reversi.engine.MonteCarlo;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@link ReversiServer} waits for incoming client connections and
@@ -21,6 +36,100 @@ public class ReversiServer implements ReversiProtocol, Closeable {
      */
     private ServerSocket server;
 
+    /**
+     * How long {@link #close()} waits for games in progress to finish
+     * before hanging up on their players.
+     */
+    private static final long SHUTDOWN_SECONDS = 30;
+
+    /** rating points in each matchmaking band */
+    private static final int RATING_BAND = 50;
+
+    /** how long a player waits before matchmaking looks at wider ratings */
+    private static final long MATCH_TARGET_MILLIS = 2000;
+
+    /** how often the game clocks are checked */
+    private static final long TIMER_TICK_MILLIS = 100;
+
+    /** how many ticks of the game clock timer make one turn of its wheel */
+    private static final int TIMER_BUCKETS = 512;
+
+    /**
+     * The {@link ExecutorService} that runs the games in multi-game mode,
+     * or null if the server plays a single game.
+     */
+    private ExecutorService games;
+
+    /**
+     * Every player in a game that is still running, so that a shutdown
+     * can hang up on them if their game will not finish.
+     */
+    private Set<ReversiPlayer> players = ConcurrentHashMap.newKeySet();
+
+    /**
+     * A player of a multi-game server who is waiting for an opponent, or
+     * null.  Guarded by the server's lock.
+     */
+    private ReversiPlayer waiting;
+
+    /**
+     * The spectators of every game still running in matchmaking mode, by
+     * game number.
+     */
+    private Map<Integer, Spectators> live = new ConcurrentHashMap<>();
+
+    /**
+     * Sends every game's spectators their messages, or null if the server
+     * is not matchmaking.
+     */
+    private SpectatorLoop spectatorLoop;
+
+    /**
+     * Set once the server is closing, so that the accept loop knows the
+     * failure of {@link ServerSocket#accept()} is expected, and so that
+     * only the first call of {@link #close()} does anything.
+     */
+    private final AtomicBoolean closing = new AtomicBoolean();
+
+    /**
+     * Whether clients are offered the {@link reversi.BinaryProtocol binary
+     * protocol} in the {@link #CONNECT} request.
+     */
+    private boolean offerBinary;
+
+    /**
+     * The rules every game is played under.
+     */
+    private Reversi.Rules rules = Reversi.Rules.RELAXED;
+
+    /**
+     * The clock each game's players start with, or null if moves are not
+     * timed.
+     */
+    private GameClock clock;
+
+    /**
+     * Runs out the clocks of every game.  It is shared, so that a busy
+     * server does not need a timer thread per game.
+     */
+    private HashedWheelTimer timer;
+
+    /**
+     * Where finished games are recorded, or null if they are not.
+     */
+    private GameLog log;
+
+    /**
+     * The search that picks the moves of the computer player every client
+     * plays against, or null if clients play each other.
+     */
+    private MonteCarlo bot;
+
+    /**
+     * How long the computer player thinks about each move.
+     */
+    private long botMillis;
+
     /**
      * Creates a new {@link ReversiServer} that listens for incoming
      * connections on the specified port.
@@ -32,27 +141,192 @@ public class ReversiServer implements ReversiProtocol, Closeable {
      */
     public ReversiServer(int port) throws ReversiException {
         try {
-            this.server = new ServerSocket(port);
+            // accepted sockets then have channels, which spectators need
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            this.server = channel.socket();
         } catch (IOException e) {
             throw new ReversiException(e);
         }
     }
 
     /**
-     * Closes the client {@link Socket}.
+     * Choose whether clients are offered the {@link reversi.BinaryProtocol
+     * binary protocol} when they connect.  Clients that are offered it must
+     * answer with the protocol version they want.
+     *
+     * @param offerBinary whether to offer binary frames
+     */
+    public void setOfferBinary(boolean offerBinary) {
+        this.offerBinary = offerBinary;
+    }
+
+    /**
+     * Choose the rules games are played under.  Clients are told in the
+     * {@link #CONNECT} request when the rules are strict.
+     *
+     * @param rules the rules
+     */
+    public void setRules(Reversi.Rules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Time the players' moves.  A player who runs out of time loses the
+     * game.
+     *
+     * @param clock the clock each game's players start with
+     */
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+        if (this.timer == null) {
+            this.timer = new HashedWheelTimer(TIMER_TICK_MILLIS,
+                    TimeUnit.MILLISECONDS, TIMER_BUCKETS);
+        }
+    }
+
+    /**
+     * Record every finished game.  The log is closed when the server is.
+     *
+     * @param log where to record the games
+     */
+    public void setLog(GameLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Have every client play against the computer instead of another
+     * client, as player one against a {@link BotPlayer}.  The bots of all
+     * the games share the engine, which is closed when the server is.
+     * Matchmaking ignores this.
+     *
+     * @param engine the search that picks the computer's moves
+     * @param millis how long to search for each move
+     */
+    public void setBot(MonteCarlo engine, long millis) {
+        this.bot = engine;
+        this.botMillis = millis;
+    }
+
+    /**
+     * Get the port the server is listening on, which is chosen by the
+     * system if the server was created with port 0.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * Sets up a game, timed if the server has a clock, and recorded if it
+     * has a log.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param playerOne first player
+     * @param playerTwo second player
+     * @return the game, ready to run
+     */
+    private ReversiGame newGame(int rows, int cols, ReversiPlayer playerOne,
+                                ReversiPlayer playerTwo) {
+        return newGame(rows, cols, playerOne, playerOne.getId(),
+                playerTwo, playerTwo.getId());
+    }
+
+    /**
+     * Sets up a game between any two players, timed if the server has a
+     * clock, and recorded under the given names if it has a log.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param playerOne first player
+     * @param playerOneId the first player's name in the log
+     * @param playerTwo second player
+     * @param playerTwoId the second player's name in the log
+     * @return the game, ready to run
+     */
+    private ReversiGame newGame(int rows, int cols, BlockingPlayer playerOne, String playerOneId,
+                                BlockingPlayer playerTwo, String playerTwoId) {
+        ReversiGame game = new ReversiGame(rows, cols, this.rules, playerOne, playerTwo);
+        if (this.clock != null) {
+            game.setClock(new GameClock(this.clock), this.timer);
+        }
+        if (this.log != null) {
+            game.setLog(this.log, playerOneId, playerTwoId);
+        }
+        return game;
+    }
+
+    /**
+     * Sets up a game between a client and the computer.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param player the client, who is player one
+     * @return the game, ready to run
+     */
+    private ReversiGame newBotGame(int rows, int cols, ReversiPlayer player) {
+        BotPlayer bot = new BotPlayer(this.bot, this.botMillis);
+        bot.connect(rows, cols, this.rules);
+        return newGame(rows, cols, player, player.getId(), bot, bot.getId());
+    }
+
+    /**
+     * Closes the {@link ServerSocket}.  In multi-game mode, games that are
+     * already running are given {@link #SHUTDOWN_SECONDS} seconds to finish
+     * before their players are disconnected.  Calling this again, say from
+     * a shutdown hook, does nothing.
      */
     @Override
     public void close() {
+        if (!this.closing.compareAndSet(false, true)) {
+            return;
+        }
         try {
             this.server.close();
         } catch (IOException ioe) {
             // squash
         }
+
+        if (this.games != null) {
+            this.games.shutdown();
+            try {
+                if (!this.games.awaitTermination(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) {
+                    // hanging up makes the blocked reads fail, which ends the games
+                    for (ReversiPlayer player : this.players) {
+                        player.close();
+                    }
+                    this.games.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                this.games.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.spectatorLoop != null) {
+            this.spectatorLoop.close();
+        }
+        if (this.timer != null) {
+            this.timer.close();
+        }
+        if (this.bot != null) {
+            this.bot.close();
+        }
+        if (this.log != null) {
+            try {
+                this.log.close();
+            } catch (IOException e) {
+                System.err.println("Game log not written: " + e.getMessage());
+            }
+        }
     }
 
     /**
      * Waits for two clients to connect. Creates a {@link ReversiPlayer}
-     * for each and then pairs them off in a {@link ReversiGame}.<P>
+     * for each and then pairs them off in a {@link ReversiGame}.  With a
+     * {@link #setBot bot}, only one client is waited for, and it plays the
+     * computer.<P>
      * <p>
      * This server is not threaded, so only a single game can be played.
      * The server terminates if an exception is raised, or the game ends.
@@ -63,19 +337,27 @@ public class ReversiServer implements ReversiProtocol, Closeable {
             Socket playerOneSocket = server.accept();
             try (ReversiPlayer playerOne =
                     new ReversiPlayer(playerOneSocket)) {
-                playerOne.connect(rows, cols);
+                playerOne.connect(rows, cols, this.rules, this.offerBinary);
                 System.out.println("Player one connected! " + playerOneSocket);
+                if (this.bot != null) {
+                    System.out.println("Starting game against the computer!");
+                    newBotGame(rows, cols, playerOne).run();
+                    System.out.printf("Game over. (%.2f writes per move)%n",
+                            WriteStats.writesPerMove());
+                    return;
+                }
                 System.out.println("Waiting for player two...");
                 Socket playerTwoSocket = server.accept();
                 try (ReversiPlayer playerTwo =
                         new ReversiPlayer(playerTwoSocket)) {
-                    playerTwo.connect(rows, cols);
+                    playerTwo.connect(rows, cols, this.rules, this.offerBinary);
                     System.out.println("Player two connected! " + playerTwoSocket);
 
                     System.out.println("Starting game!");
-                    ReversiGame game =
-                            new ReversiGame(rows, cols, playerOne, playerTwo);
+                    ReversiGame game = newGame(rows, cols, playerOne, playerTwo);
                     game.run();
+                    System.out.printf("Game over. (%.2f writes per move)%n",
+                            WriteStats.writesPerMove());
                 }
             }
         } catch (IOException e) {
@@ -87,23 +369,520 @@ public class ReversiServer implements ReversiProtocol, Closeable {
         }
     }
 
+    /**
+     * Waits for clients to connect, and pairs them off in
+     * {@link ReversiGame games} as they arrive, for as long as the server
+     * is open.  Each game is played on its own platform thread, so any
+     * number of games can be played at once.  Call {@link #close()} (from
+     * another thread) to stop.
+     */
+    public void runMultiGame(int rows, int cols) {
+        runMultiGame(rows, cols, Executors.newCachedThreadPool());
+    }
+
+    /**
+     * Waits for clients to connect, and pairs them off in
+     * {@link ReversiGame games} that are run by an {@link ExecutorService},
+     * for as long as the server is open.  With a {@link #setBot bot},
+     * each client plays a game of its own against the computer.  Each
+     * client's {@link #CONNECT} handshake is done by the executor too, so
+     * a slow client does not hold up the ones that connect after it.  Call
+     * {@link #close()} (from another thread) to stop; the executor is shut
+     * down then.
+     *
+     * @param games runs each game and handshake; it must not limit how
+     *              many run at once, or games will queue up waiting for
+     *              others to finish
+     * @see #newVirtualThreadExecutor()
+     */
+    public void runMultiGame(int rows, int cols, ExecutorService games) {
+        this.games = games;
+        AtomicInteger gameNo = new AtomicInteger();
+        while (!this.closing.get()) {
+            Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException e) {
+                if (!this.closing.get()) {
+                    System.err.println("Something has gone horribly wrong!");
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            try {
+                // the handshake may wait on the client, so it is left to a
+                // game thread, and the next client is not held up
+                this.games.execute(() -> connected(socket, rows, cols, gameNo));
+            } catch (RejectedExecutionException e) {
+                // the server closed just after the client connected
+                try {
+                    socket.close();
+                } catch (IOException ioe) {
+                    // squash
+                }
+            }
+        }
+        // connected() holds the same lock, and hangs up on anyone who
+        // arrives after this
+        ReversiPlayer player;
+        synchronized (this) {
+            player = this.waiting;
+            this.waiting = null;
+        }
+        if (player != null) {
+            player.close();
+        }
+    }
+
+    /**
+     * Sets up a client that has just connected to a multi-game server, and
+     * starts its game if it has an opponent: the computer, or whoever was
+     * waiting.  Otherwise the player waits for the next client, unless the
+     * server has closed, when the player is hung up on.
+     *
+     * @param socket the client's connection
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param gameNo counts the games, to tell them apart in the log
+     */
+    private void connected(Socket socket, int rows, int cols, AtomicInteger gameNo) {
+        ReversiPlayer player;
+        try {
+            player = accept(socket, rows, cols);
+        } catch (ReversiException e) {
+            // only the client that failed is hung up on; a player
+            // already waiting goes on waiting for the next one
+            System.err.println("Failed to create player: " + e.getMessage());
+            return;
+        }
+        if (this.bot != null) {
+            startBotGame(gameNo.incrementAndGet(), rows, cols, player);
+            return;
+        }
+        ReversiPlayer playerOne;
+        synchronized (this) {
+            if (this.closing.get()) {
+                // runMultiGame() may already have hung up on whoever was
+                // waiting, and would never see this player
+                player.close();
+                return;
+            }
+            playerOne = this.waiting;
+            this.waiting = playerOne == null ? player : null;
+        }
+        if (playerOne != null) {
+            startGame(gameNo.incrementAndGet(), rows, cols, playerOne, player, false);
+        }
+    }
+
+    /**
+     * Waits for clients to connect, and pairs them off by rating and board
+     * size with a {@link Matchmaker}, for as long as the server is open.
+     * Each client must first send a {@link #JOIN} request; players who do
+     * not ask for a board size get rows x cols.  Each game is played on its
+     * own thread.  A client may send {@link #WATCH} instead, to watch a
+     * game that is running; every spectator of every game is sent the
+     * game by a single {@link SpectatorLoop} thread.  Call {@link #close()}
+     * (from another thread) to stop; players still waiting for a match are
+     * hung up on then.
+     */
+    public void runMatchmaking(int rows, int cols) {
+        this.games = Executors.newCachedThreadPool();
+        AtomicInteger gameNo = new AtomicInteger();
+        try {
+            this.spectatorLoop = new SpectatorLoop();
+        } catch (IOException e) {
+            System.err.println("Something has gone horribly wrong!");
+            e.printStackTrace();
+            return;
+        }
+        new Thread(this.spectatorLoop, "reversi-spectators").start();
+        Matchmaker<ReversiPlayer> matchmaker = new Matchmaker<>(
+                RATING_BAND, MATCH_TARGET_MILLIS, (one, two, r, c) ->
+                    // the handshake may block, so it is left to the game's thread
+                    startGame(gameNo.incrementAndGet(), r, c, one, two, true),
+                player -> !player.hasHungUp());
+        while (!this.closing.get()) {
+            Socket socket;
+            try {
+                socket = this.server.accept();
+            } catch (IOException e) {
+                if (!this.closing.get()) {
+                    System.err.println("Something has gone horribly wrong!");
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            try {
+                // reading the JOIN request blocks, so do it off the accept loop
+                this.games.execute(() -> joined(socket, rows, cols, matchmaker));
+            } catch (RejectedExecutionException e) {
+                // the server closed just after the client connected
+                try {
+                    socket.close();
+                } catch (IOException ioe) {
+                    // squash
+                }
+            }
+        }
+        // players still waiting are in no game, so nothing else hangs up on them
+        for (ReversiPlayer player : matchmaker.shutdown()) {
+            player.close();
+        }
+    }
+
+    /**
+     * Reads the {@link #JOIN} or {@link #WATCH} request of a client that
+     * has just connected to a matchmaking server, and hands the client to
+     * the matchmaker or to the game it wants to watch.
+     *
+     * @param socket the client's connection
+     * @param rows number of rows in the board, if the client does not ask
+     * @param cols number of columns in the board, if the client does not ask
+     * @param matchmaker pairs off the players
+     */
+    private void joined(Socket socket, int rows, int cols,
+                        Matchmaker<ReversiPlayer> matchmaker) {
+        try {
+            ReversiPlayer player = new ReversiPlayer(socket);
+            int[] join = player.join(rows, cols);
+            if (join.length == 1) {
+                watch(socket, join[0]);
+                return;
+            }
+            System.out.println("Player joined! " + socket);
+            if (!matchmaker.join(player, join[0], join[1], join[2])) {
+                // the server closed while the client was joining
+                player.close();
+            }
+        } catch (ReversiException e) {
+            System.err.println("Failed to create player: " + e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // squash
+            }
+        }
+    }
+
+    /**
+     * Hands a spectator to the game it asked to watch.
+     *
+     * @param socket the spectator's connection
+     * @param gameNo the game to watch, or 0 for the one with the highest
+     *               rated players
+     * @throws ReversiException if there is no such game
+     */
+    private void watch(Socket socket, int gameNo) throws ReversiException {
+        Spectators spectators = null;
+        if (gameNo != 0) {
+            spectators = this.live.get(gameNo);
+        } else {
+            for (Spectators game : this.live.values()) {
+                if (spectators == null || game.getRating() > spectators.getRating()) {
+                    spectators = game;
+                }
+            }
+        }
+        if (spectators == null) {
+            throw new ReversiException("No game to watch: " + gameNo);
+        }
+        try {
+            spectators.watch(socket);
+        } catch (IOException e) {
+            throw new ReversiException(e);
+        }
+        System.out.println("Spectator joined! " + socket);
+    }
+
+    /**
+     * Creates a player for a client that has connected, and tells it the
+     * board size.
+     *
+     * @param socket the client's connection
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @return the new player
+     * @throws ReversiException if the player could not be created, in
+     * which case its connection has been closed
+     */
+    private ReversiPlayer accept(Socket socket, int rows, int cols) throws ReversiException {
+        try {
+            ReversiPlayer player = new ReversiPlayer(socket);
+            player.connect(rows, cols, this.rules, this.offerBinary);
+            System.out.println("Player connected! " + socket);
+            return player;
+        } catch (ReversiException e) {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // squash
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a game between two players on one of the game threads, or
+     * hangs up on them if the server has closed.
+     *
+     * @param gameNo number used to tell games apart in the log
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param playerOne first player
+     * @param playerTwo second player
+     * @param connect whether the players still need the {@link #CONNECT}
+     *                request
+     */
+    private void startGame(int gameNo, int rows, int cols,
+                           ReversiPlayer playerOne, ReversiPlayer playerTwo,
+                           boolean connect) {
+        this.players.add(playerOne);
+        this.players.add(playerTwo);
+        // only matchmaking games can be watched
+        Spectators spectators = connect ? new Spectators(rows, cols, this.rules,
+                playerOne.getRating() + playerTwo.getRating(), this.spectatorLoop) : null;
+        if (spectators != null) {
+            this.live.put(gameNo, spectators);
+        }
+        try {
+            this.games.execute(() -> playGame(gameNo, rows, cols, playerOne, playerTwo,
+                    connect, spectators));
+        } catch (RejectedExecutionException e) {
+            // the server is closing, and the game never started
+            if (spectators != null) {
+                this.live.remove(gameNo);
+                spectators.close();
+            }
+            playerOne.close();
+            playerTwo.close();
+            this.players.remove(playerOne);
+            this.players.remove(playerTwo);
+        }
+    }
+
+    /**
+     * Plays a game between two players.  Called on one of the game threads.
+     *
+     * @param gameNo number used to tell games apart in the log
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param playerOne first player
+     * @param playerTwo second player
+     * @param connect whether the players still need the {@link #CONNECT}
+     *                request
+     * @param spectators who is watching, or null if the game cannot be
+     *                   watched
+     */
+    private void playGame(int gameNo, int rows, int cols,
+                          ReversiPlayer playerOne, ReversiPlayer playerTwo,
+                          boolean connect, Spectators spectators) {
+        System.out.println("Starting game " + gameNo + "!");
+        try {
+            if (connect) {
+                playerOne.connect(rows, cols, this.rules, this.offerBinary);
+                playerTwo.connect(rows, cols, this.rules, this.offerBinary);
+            }
+            ReversiGame game = newGame(rows, cols, playerOne, playerTwo);
+            if (spectators != null) {
+                game.setSpectators(spectators);
+            }
+            game.run();
+        } catch (ReversiException e) {
+            System.err.println("Game " + gameNo + " could not start: " + e.getMessage());
+        } catch (RuntimeException e) {
+            // most likely a player hung up in the middle of the game
+            System.err.println("Game " + gameNo + " ended abnormally: " + e);
+        } finally {
+            if (spectators != null) {
+                this.live.remove(gameNo);
+                spectators.close();
+            }
+            playerOne.close();
+            playerTwo.close();
+            this.players.remove(playerOne);
+            this.players.remove(playerTwo);
+            System.out.printf("Game %d over. (%.2f writes per move)%n",
+                    gameNo, WriteStats.writesPerMove());
+        }
+    }
+
+    /**
+     * Starts a game between a client and the computer on one of the game
+     * threads, or hangs up on the client if the server has closed.
+     *
+     * @param gameNo number used to tell games apart in the log
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param player the client, who is player one
+     */
+    private void startBotGame(int gameNo, int rows, int cols, ReversiPlayer player) {
+        this.players.add(player);
+        try {
+            this.games.execute(() -> playBotGame(gameNo, rows, cols, player));
+        } catch (RejectedExecutionException e) {
+            // the server is closing, and the game never started
+            player.close();
+            this.players.remove(player);
+        }
+    }
+
+    /**
+     * Plays a game between a client and the computer.  Called on one of
+     * the game threads.
+     *
+     * @param gameNo number used to tell games apart in the log
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param player the client, who is player one
+     */
+    private void playBotGame(int gameNo, int rows, int cols, ReversiPlayer player) {
+        System.out.println("Starting game " + gameNo + " against the computer!");
+        try {
+            newBotGame(rows, cols, player).run();
+        } catch (RuntimeException e) {
+            // most likely the player hung up in the middle of the game
+            System.err.println("Game " + gameNo + " ended abnormally: " + e);
+        } finally {
+            player.close();
+            this.players.remove(player);
+            System.out.printf("Game %d over. (%.2f writes per move)%n",
+                    gameNo, WriteStats.writesPerMove());
+        }
+    }
+
+    /**
+     * Creates an {@link ExecutorService} that runs each task on its own
+     * virtual thread.  A game spends nearly all of its time blocked
+     * waiting for a player to move, and a blocked virtual thread costs a
+     * little heap rather than an OS thread, so a single server can hold
+     * many more games this way.<P>
+     *
+     * Virtual threads need Java 21.  On an older runtime this falls back
+     * to a cached pool of platform threads.
+     *
+     * @return the executor
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("No virtual threads before Java 21, using platform threads.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Is a command line argument a board size the server can play on, and
+     * record in a {@link GameLog}?
+     *
+     * @param arg the argument
+     * @return whether it is a number from {@link Reversi#MIN_DIM} to
+     * {@link Reversi#MAX_DIM}
+     */
+    private static boolean isDimension(String arg) {
+        try {
+            int dim = Integer.parseInt(arg);
+            return dim >= Reversi.MIN_DIM && dim <= Reversi.MAX_DIM;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     /**
      * Starts a new {@link ReversiServer}. Simply creates the server and
-     * calls {@link #run(int, int)}
+     * calls {@link #run(int, int)}, or {@link #runMultiGame(int, int)} if
+     * the optional <tt>-m</tt> flag is given.  The <tt>-v</tt> flag also
+     * plays many games at once, each on a virtual thread, and the
+     * <tt>-j</tt> flag pairs players by {@link #runMatchmaking(int, int)
+     * matchmaking}.  Adding <tt>-b</tt> offers clients the binary protocol,
+     * and <tt>-s</tt> plays every game under the strict rules.  The
+     * <tt>-c</tt> flag has each client play the computer instead, which
+     * thinks for the given time about each move.
      *
      * @param args Used to specify the port on which the server should listen
      *             for incoming client connections.
      * @throws ReversiException If there is an error starting the server.
      */
     public static void main(String[] args) throws ReversiException {
-        if (args.length != 3) {
-            System.out.println("Usage: java ReversiServer #_rows #_cols port");
+        boolean multi = false;
+        boolean virtual = false;
+        boolean matchmaking = false;
+        boolean binary = false;
+        boolean strict = false;
+        GameClock clock = null;
+        String log = null;
+        long botMillis = 0;
+        boolean ok = args.length >= 3;
+        for (int i=3; ok && i<args.length; ++i) {
+            switch (args[i]) {
+                case "-m": multi = true; break;
+                case "-v": virtual = true; break;
+                case "-j": matchmaking = true; break;
+                case "-b": binary = true; break;
+                case "-s": strict = true; break;
+                case "-t":
+                    try {
+                        clock = GameClock.parse(args[++i]);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        ok = false;
+                    }
+                    break;
+                case "-l":
+                    ok = ++i < args.length;
+                    log = ok ? args[i] : null;
+                    break;
+                case "-c":
+                    try {
+                        botMillis = Long.parseLong(args[++i]);
+                        ok = botMillis > 0;
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        ok = false;
+                    }
+                    break;
+                default:
+                    ok = false;
+            }
+        }
+        if (!ok || !isDimension(args[0]) || !isDimension(args[1]) ||
+                (multi ? 1 : 0) + (virtual ? 1 : 0) + (matchmaking ? 1 : 0) > 1 ||
+                (matchmaking && botMillis > 0)) {
+            System.out.println("Usage: java ReversiServer #_rows #_cols port " +
+                    "[-m|-v|-j] [-b] [-s] " +
+                    "[-t secs_per_move|-t secs_per_game+secs_per_move] [-l game_log] " +
+                    "[-c millis_per_move]");
             System.exit(1);
         }
 
         try (ReversiServer server = new ReversiServer(Integer.parseInt(args[2]))) {
-            server.run(Integer.parseInt(args[0]),
-                    Integer.parseInt(args[1]));
+            server.setOfferBinary(binary);
+            server.setRules(strict ? Reversi.Rules.STRICT : Reversi.Rules.RELAXED);
+            if (clock != null) {
+                server.setClock(clock);
+            }
+            if (log != null) {
+                server.setLog(new GameLog(Paths.get(log)));
+            }
+            if (botMillis > 0) {
+                server.setBot(new MonteCarlo(Runtime.getRuntime().availableProcessors()),
+                        botMillis);
+            }
+            if (matchmaking) {
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                server.runMatchmaking(Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]));
+            } else if (multi || virtual) {
+                // close the server, letting games finish, on Ctrl-C
+                Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+                server.runMultiGame(Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]),
+                        virtual ? newVirtualThreadExecutor() : Executors.newCachedThreadPool());
+            } else {
+                server.run(Integer.parseInt(args[0]),
+                        Integer.parseInt(args[1]));
+            }
         } catch (ReversiException e) {
             System.err.println("Failed to start server!");
             e.printStackTrace();
@@ -0,0 +1,243 @@
+package reversi.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Sends every game's {@link Spectators} their messages from one thread.
+ * Each spectator's connection is made non-blocking and registered with a
+ * {@link Selector}.  A spectator with messages waiting is sent as much as
+ * its socket will take, and the loop comes back for the rest once the
+ * socket can take more, so a slow spectator never holds up the others,
+ * and any number of them cost no more threads than one.<P>
+ *
+ * Messages are queued from the games' threads; only the loop's thread
+ * ever writes.
+ */
+class SpectatorLoop implements Runnable, Closeable {
+    /**
+     * One spectator's connection and the messages waiting for it.  Guarded
+     * by its own lock.
+     */
+    static class Viewer {
+        /** the connection */
+        private final SocketChannel channel;
+        /** messages not yet written, the first perhaps partly */
+        private final Queue<ByteBuffer> queue = new ArrayDeque<>();
+        /** the channel's registration, once the loop has made it */
+        private SelectionKey key;
+        /** set while the viewer is waiting to be written */
+        private boolean scheduled;
+        /** set once the connection should close when the queue is empty */
+        private boolean ending;
+
+        /**
+         * Create a viewer.
+         *
+         * @param channel the connection
+         */
+        Viewer(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Is the connection still open?
+         *
+         * @return whether the viewer is still being sent messages
+         */
+        boolean isOpen() {
+            return this.channel.isOpen();
+        }
+    }
+
+    /** how many messages a spectator may fall behind before it is dropped */
+    private static final int MAX_BEHIND = 64;
+
+    /** waits for spectators' sockets to take more */
+    private Selector selector;
+    /** viewers with new messages, handed over by the games' threads */
+    private Queue<Viewer> ready = new ConcurrentLinkedQueue<>();
+    /** cleared to stop the loop */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a loop.  Run it on a thread of its own.
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    SpectatorLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Get ready to send to a spectator.
+     *
+     * @param sock the spectator's connection, which must have been
+     *             accepted from a {@link java.nio.channels.ServerSocketChannel}
+     * @return the viewer
+     * @throws IOException if the connection has no channel
+     */
+    Viewer open(Socket sock) throws IOException {
+        if (sock.getChannel() == null) {
+            throw new IOException("Spectator connection has no channel");
+        }
+        return new Viewer(sock.getChannel());
+    }
+
+    /**
+     * Queue a message for a viewer.  This never waits.
+     *
+     * @param viewer the viewer
+     * @param message the message; it is not changed, so the same bytes may
+     *                be queued for many viewers
+     * @return false if the viewer had fallen {@link #MAX_BEHIND} messages
+     * behind, and has been hung up on; true otherwise, even if the viewer
+     * had already gone
+     */
+    boolean send(Viewer viewer, byte[] message) {
+        synchronized (viewer) {
+            if (!viewer.isOpen() || viewer.ending) {
+                return true;
+            }
+            if (viewer.queue.size() >= MAX_BEHIND) {
+                close(viewer);
+                return false;
+            }
+            viewer.queue.add(ByteBuffer.wrap(message));
+            schedule(viewer);
+        }
+        return true;
+    }
+
+    /**
+     * Hang up on a viewer once it has been sent everything queued for it.
+     *
+     * @param viewer the viewer
+     */
+    void finish(Viewer viewer) {
+        synchronized (viewer) {
+            viewer.ending = true;
+            schedule(viewer);
+        }
+    }
+
+    /**
+     * Hand a viewer to the loop's thread to be written, unless it is
+     * already waiting to be.
+     *
+     * @param viewer the viewer, whose lock is held
+     */
+    private void schedule(Viewer viewer) {
+        if (!viewer.scheduled) {
+            viewer.scheduled = true;
+            this.ready.add(viewer);
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the loop until {@link #close()} is called.
+     */
+    @Override
+    public void run() {
+        try {
+            while (this.running) {
+                this.selector.select();
+                Viewer viewer;
+                while ((viewer = this.ready.poll()) != null) {
+                    write(viewer);
+                }
+                for (SelectionKey key : this.selector.selectedKeys()) {
+                    write((Viewer) key.attachment());
+                }
+                this.selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Spectator loop failed!");
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : this.selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // squash
+                }
+            }
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                // squash
+            }
+        }
+    }
+
+    /**
+     * Writes as much of a viewer's queue as its socket will take, and asks
+     * to be told when it can take the rest.  Called on the loop's thread.
+     *
+     * @param viewer the viewer
+     */
+    private void write(Viewer viewer) {
+        synchronized (viewer) {
+            viewer.scheduled = false;
+            if (!viewer.isOpen()) {
+                return;
+            }
+            try {
+                if (viewer.key == null) {
+                    viewer.channel.configureBlocking(false);
+                    viewer.key = viewer.channel.register(this.selector, 0, viewer);
+                }
+                ByteBuffer message;
+                while ((message = viewer.queue.peek()) != null) {
+                    viewer.channel.write(message);
+                    if (message.hasRemaining()) {
+                        break;
+                    }
+                    viewer.queue.poll();
+                }
+                if (!viewer.queue.isEmpty()) {
+                    viewer.key.interestOps(SelectionKey.OP_WRITE);
+                } else if (viewer.ending) {
+                    close(viewer);
+                } else {
+                    viewer.key.interestOps(0);
+                }
+            } catch (IOException e) {
+                // the spectator went away
+                close(viewer);
+            }
+        }
+    }
+
+    /**
+     * Closes a viewer's connection, which also cancels its registration.
+     *
+     * @param viewer the viewer, whose lock is held
+     */
+    private static void close(Viewer viewer) {
+        viewer.queue.clear();
+        try {
+            viewer.channel.close();
+        } catch (IOException e) {
+            // squash
+        }
+    }
+
+    /**
+     * Stops the loop and closes all of its connections.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+}
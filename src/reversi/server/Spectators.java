@@ -0,0 +1,178 @@
+package reversi.server;
+
+import reversi.Reversi;
+import reversi.ReversiProtocol;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The spectators watching one {@link ReversiGame}.  Each message is
+ * encoded once, and the same bytes are queued for every spectator; a
+ * {@link SpectatorLoop} shared by every game sends them on with
+ * non-blocking writes.  The game's thread only ever adds to the queues,
+ * and never waits on a spectator's socket.  A spectator whose queue fills
+ * up because it is not keeping up is disconnected, so that it holds up
+ * neither the game nor the other spectators.<P>
+ *
+ * Everything sent so far is kept, so that a spectator who arrives in the
+ * middle of the game is brought up to date first.  See
+ * {@link ReversiProtocol#WATCH} for the messages.
+ */
+public class Spectators implements ReversiProtocol, Closeable {
+    /** how many spectators have been dropped for falling behind */
+    private static final LongAdder DROPPED = new LongAdder();
+
+    /** sends the messages */
+    private SpectatorLoop loop;
+    /** the rating of the game, used to find the top game */
+    private int rating;
+    /** everything sent so far */
+    private ByteArrayOutputStream history = new ByteArrayOutputStream();
+    /** the spectators still watching */
+    private List<SpectatorLoop.Viewer> spectators = new CopyOnWriteArrayList<>();
+    /** set once the game is over */
+    private boolean closed;
+
+    /**
+     * Get ready for spectators.
+     *
+     * @param rows number of rows in board
+     * @param cols number of columns in board
+     * @param rules the rules the game is played under
+     * @param rating the rating of the game, such as its players' total
+     * @param loop sends the messages
+     */
+    Spectators(int rows, int cols, Reversi.Rules rules, int rating, SpectatorLoop loop) {
+        this.loop = loop;
+        this.rating = rating;
+        broadcast(CONNECT + " " + rows + " " + cols +
+                (rules == Reversi.Rules.STRICT ? " " + STRICT : ""));
+    }
+
+    /**
+     * Get the rating of the game.
+     *
+     * @return the rating
+     */
+    public int getRating() {
+        return this.rating;
+    }
+
+    /**
+     * How many spectators are watching?
+     *
+     * @return the number of spectators
+     */
+    public int size() {
+        return this.spectators.size();
+    }
+
+    /**
+     * How many spectators have been dropped for falling behind, across
+     * every game on the server?
+     *
+     * @return the number dropped
+     */
+    public static long dropped() {
+        return DROPPED.sum();
+    }
+
+    /**
+     * Start sending the game to a spectator, beginning with everything
+     * sent so far.
+     *
+     * @param sock the spectator's connection, accepted from a
+     *             {@link java.nio.channels.ServerSocketChannel}
+     * @throws IOException if the connection cannot be watched on
+     */
+    public synchronized void watch(Socket sock) throws IOException {
+        SpectatorLoop.Viewer spectator = this.loop.open(sock);
+        this.loop.send(spectator, this.history.toByteArray());
+        if (this.closed) {
+            this.loop.finish(spectator);
+        } else {
+            this.spectators.add(spectator);
+        }
+    }
+
+    /**
+     * Tell the spectators a move has been made.
+     *
+     * @param row the row of the move
+     * @param col the column of the move
+     */
+    public void moveMade(int row, int col) {
+        broadcast(MOVE_MADE + " " + row + " " + col);
+    }
+
+    /**
+     * Tell the spectators the player whose turn it was had to pass.
+     */
+    public void passMade() {
+        broadcast(PASS);
+    }
+
+    /**
+     * Tell the spectators who won.
+     *
+     * @param player the winner's number, 1 or 2
+     */
+    public void gameWon(int player) {
+        broadcast(GAME_WON + " " + player);
+    }
+
+    /**
+     * Tell the spectators the game was tied.
+     */
+    public void gameTied() {
+        broadcast(GAME_TIED);
+    }
+
+    /**
+     * Tell the spectators the game cannot go on.
+     *
+     * @param message the error message
+     */
+    public void error(String message) {
+        broadcast(ERROR + " " + message);
+    }
+
+    /**
+     * Let each spectator finish receiving what has been sent, and then
+     * hang up on it.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        for (SpectatorLoop.Viewer spectator : this.spectators) {
+            this.loop.finish(spectator);
+        }
+        this.spectators.clear();
+    }
+
+    /**
+     * Encode a message once and queue it for every spectator, dropping
+     * those who have fallen too far behind or gone away.
+     *
+     * @param message the message, without its line ending
+     */
+    private synchronized void broadcast(String message) {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        this.history.write(bytes, 0, bytes.length);
+        for (SpectatorLoop.Viewer spectator : this.spectators) {
+            if (!this.loop.send(spectator, bytes)) {
+                this.spectators.remove(spectator);
+                DROPPED.increment();
+            } else if (!spectator.isOpen()) {
+                this.spectators.remove(spectator);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package reversi.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the writes made to player sockets and the moves made in games,
+ * across every game on the server.  Players buffer the messages of one
+ * game step and send them with a single write when they are
+ * {@link Player#flush() flushed}, so a move normally costs one write per
+ * player; {@link #writesPerMove()} shows how close a busy server gets to
+ * that.
+ */
+public final class WriteStats {
+    /** writes made to sockets */
+    private static final LongAdder WRITES = new LongAdder();
+    /** moves made in games */
+    private static final LongAdder MOVES = new LongAdder();
+
+    /**
+     * No instances; everything is static.
+     */
+    private WriteStats() {
+    }
+
+    /**
+     * Count a write to a player's socket.
+     */
+    static void wrote() {
+        WRITES.increment();
+    }
+
+    /**
+     * Count a move made in a game.
+     */
+    static void moved() {
+        MOVES.increment();
+    }
+
+    /**
+     * How many writes have been made to player sockets?
+     *
+     * @return the number of writes
+     */
+    public static long writes() {
+        return WRITES.sum();
+    }
+
+    /**
+     * How many moves have been made in games?
+     *
+     * @return the number of moves
+     */
+    public static long moves() {
+        return MOVES.sum();
+    }
+
+    /**
+     * How many socket writes has each move cost, on average?  The
+     * {@link reversi.ReversiProtocol#CONNECT} handshake and the final
+     * result are counted as well, so this is a little over two for short
+     * games even when every step is coalesced.
+     *
+     * @return writes per move, or 0 if no move has been made
+     */
+    public static double writesPerMove() {
+        long moves = MOVES.sum();
+        return moves == 0 ? 0 : (double) WRITES.sum() / moves;
+    }
+}
@@ -1,6 +1,7 @@
 package reversi2;
 
 import reversi.ReversiException;
+import reversi.Zobrist;
 
 import java.util.EnumMap;
 import java.util.Observable;
@@ -107,7 +108,30 @@ public class Board extends Observable {
     private Board.Move[][] board;
 
     /**
-     * Initialize an empty board of a specified size.
+     * The empty squares next to at least one disc, indexed by
+     * <tt>row*cols+col</tt>. It is kept up to date as discs are placed,
+     * so the UI never has to search the board for places to move.
+     */
+    private boolean[] frontier;
+
+    /**
+     * {@link Zobrist} hash of the position, kept up to date as discs are
+     * placed and flipped. It matches {@link reversi.Reversi#getHash()} for
+     * the same position.
+     */
+    private long hash;
+
+    /**
+     * Whether the game is played under the official rules, where a move
+     * must flip at least one disc, or the relaxed ones, where any empty
+     * square next to a disc will do. The server says which in its
+     * {@link reversi.ReversiProtocol#CONNECT} message.
+     */
+    private boolean strict;
+
+    /**
+     * Initialize an empty board of a specified size, for a game played
+     * under the relaxed rules.
      *
      * @param rows number of rows
      * @param cols number of columns
@@ -116,16 +140,33 @@ public class Board extends Observable {
      * @throws ReversiException if a dimension is too small
      */
     public void allocate( int rows, int cols ) throws ReversiException {
+        this.allocate( rows, cols, false );
+    }
+
+    /**
+     * Initialize an empty board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param strict whether a move must flip at least one disc
+     * @rit.pre the board dimensions cannot be smaller than
+     *          {@link Board#MIN_DIM}x{@link Board#MIN_DIM}
+     * @throws ReversiException if a dimension is too small
+     */
+    public void allocate( int rows, int cols, boolean strict )
+            throws ReversiException {
         if ( rows < Board.MIN_DIM || cols < Board.MIN_DIM ) {
             throw new ReversiException( "Board too small to play" );
         }
         // Allocate the matrix and set its dimensions (redundant).
         this.board = new Board.Move[ rows ][ cols ];
+        this.frontier = new boolean[ rows * cols ];
         this.rows = rows;
         this.cols = cols;
         this.movesLeft = rows * cols;
         this.status = Status.NOT_OVER;
         this.myTurn = false;
+        this.strict = strict;
     }
 
     /**
@@ -147,6 +188,16 @@ public class Board extends Observable {
         this.board[ this.rows / 2 - 1 ][ this.cols / 2 ] = Move.PLAYER_TWO;
         this.board[ this.rows / 2 ][ this.cols / 2 - 1 ] = Move.PLAYER_TWO;
         this.movesLeft -= 4;
+        this.hash =
+                Zobrist.disc( ( this.rows / 2 - 1 ) * this.cols + this.cols / 2 - 1, true ) ^
+                Zobrist.disc( ( this.rows / 2 ) * this.cols + this.cols / 2, true ) ^
+                Zobrist.disc( ( this.rows / 2 - 1 ) * this.cols + this.cols / 2, false ) ^
+                Zobrist.disc( ( this.rows / 2 ) * this.cols + this.cols / 2 - 1, false );
+        for ( int row = this.rows / 2 - 1; row <= this.rows / 2; ++row ) {
+            for ( int col = this.cols / 2 - 1; col <= this.cols / 2; ++col ) {
+                this.updateFrontier( row, col );
+            }
+        }
 
         // It's never my turn unless the server tells me to make a move.
         this.myTurn = false;
@@ -185,6 +236,24 @@ public class Board extends Observable {
         return this.movesLeft;
     }
 
+    /**
+     * Get a 64 bit hash of the position, including whose turn it is.
+     * It is kept up to date as moves are made, so this costs nothing.
+     *
+     * @return the {@link Zobrist} hash
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Is the game played under the official rules?
+     * @return true if a move must flip at least one disc
+     */
+    public boolean isStrict() {
+        return this.strict;
+    }
+
     /**
      * Can the local user make changes to the board?
      * @return true if the server has told this player it is its time to move
@@ -245,7 +314,7 @@ public class Board extends Observable {
             // of the
             // board or we reach a square that does not contain an
             // opponent's disc.
-            while ( r >= 0 && r < this.rows && c >= 0 && c < this.rows &&
+            while ( r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
                     this.board[ r ][ c ] == opp ) {
                 r += d.rd;
                 c += d.cd;
@@ -254,15 +323,16 @@ public class Board extends Observable {
             // If we did not go off the board and the square we stopped on
             // contains one of this player's discs, flips the ones in
             // between.
-            if ( r >= 0 && r < this.rows && c >= 0 && c < this.rows &&
+            if ( r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
                  this.board[ r ][ c ] == me ) {
                 // restart
                 r = row + d.rd;
                 c = col + d.cd;
 
                 while ( r >= 0 && r < this.rows && c >= 0 &&
-                        c < this.rows && this.board[ r ][ c ] == opp ) {
+                        c < this.cols && this.board[ r ][ c ] == opp ) {
                     this.board[ r ][ c ] = me;
+                    this.hash ^= Zobrist.flip( r * this.cols + c );
                     r += d.rd;
                     c += d.cd;
                 }
@@ -271,24 +341,23 @@ public class Board extends Observable {
     }
 
     /**
-     * Check that there is an occupied neighbor - we relax the official rules
-     * here that say the neighbor must be the same color.
+     * A disc has just been placed on a square, so it is no longer part of
+     * the frontier, but its empty neighbors now are.
      *
      * @param row the row
      * @param col the column
-     * @return whether there is an occupied neighbor or not
      */
-    private boolean occupiedNeighbor( int row, int col ) {
+    private void updateFrontier( int row, int col ) {
+        this.frontier[ row * this.cols + col ] = false;
         for ( Dir d : Dir.values() ) {
             int r = row + d.rd;
             int c = col + d.cd;
             if ( r >= 0 && r < this.rows && c >= 0 &&
                  c < this.cols &&
-                 this.board[ r ][ c ] != Move.NONE ) {
-                return true;
+                 this.board[ r ][ c ] == Move.NONE ) {
+                this.frontier[ r * this.cols + c ] = true;
             }
         }
-        return false;
     }
 
     /**
@@ -299,13 +368,66 @@ public class Board extends Observable {
      * @param row the row
      * @param col the column
      * @return true iff the chosen square is adjacent to an occupied square
+     *         and, under the strict rules, would flip at least one disc
      */
     public boolean isValidMove( int row, int col ) {
+        // Unless the game is strict we relax the official rules, so any
+        // empty square next to a disc will do.
         return
                 ( row >= 0 && row < this.rows ) &&
                 ( col >= 0 && col < this.cols ) &&
-                ( this.board[ row ][ col ] == Move.NONE ) &&
-                this.occupiedNeighbor( row, col );
+                this.frontier[ row * this.cols + col ] &&
+                ( !this.strict || this.wouldFlip( row, col ) );
+    }
+
+    /**
+     * Would a disc for the player whose turn it is, placed on an empty
+     * square, flip anything?
+     *
+     * @param row the row
+     * @param col the column
+     * @return true iff at least one of the opponent's discs would flip
+     */
+    private boolean wouldFlip( int row, int col ) {
+        Board.Move opp = this.currentPiece.opponent();
+        for ( Dir d: Dir.values() ) {
+            int r = row + d.rd;
+            int c = col + d.cd;
+            int run = 0;
+            while ( r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                    this.board[ r ][ c ] == opp ) {
+                r += d.rd;
+                c += d.cd;
+                ++run;
+            }
+            if ( run > 0 && r >= 0 && r < this.rows && c >= 0 &&
+                 c < this.cols && this.board[ r ][ c ] == this.currentPiece ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find every square where the next disc may go. Each square is packed
+     * into a single int as <tt>row*getNCols()+col</tt>. Under the strict
+     * rules there may be none, and the server will then send a
+     * {@link reversi.ReversiProtocol#PASS}. Nothing is allocated, so this
+     * may be called as often as needed with the same array.
+     *
+     * @param moves where to put the moves; it must hold at least
+     *              <tt>getNRows()*getNCols()</tt> entries
+     * @return how many moves were written to the front of the array
+     */
+    public int legalMoves( int[] moves ) {
+        int n = 0;
+        for ( int i = 0; i < this.frontier.length; ++i ) {
+            if ( this.frontier[ i ] && ( !this.strict ||
+                    this.wouldFlip( i / this.cols, i % this.cols ) ) ) {
+                moves[ n++ ] = i;
+            }
+        }
+        return n;
     }
 
     /**
@@ -329,6 +451,10 @@ public class Board extends Observable {
         // place piece on board
         this.movesLeft -= 1;
         this.board[ row ][ col ] = this.currentPiece;
+        this.hash ^= Zobrist.disc( row * this.cols + col,
+                                   this.currentPiece == Move.PLAYER_ONE ) ^
+                     Zobrist.SIDE;
+        updateFrontier( row, col );
 
         // flip opposite neighbors
         flipPieces( row, col );
@@ -340,6 +466,54 @@ public class Board extends Observable {
         super.notifyObservers();
     }
 
+    /**
+     * Called when the server reports a move along with the discs it
+     * flipped. The flips are applied as they are, so nothing is searched
+     * and the work done depends only on how many discs were flipped.
+     * Flipping changes no square from empty to full, so only the new
+     * disc's neighbors can join the frontier.
+     *
+     * @param row the row of the move
+     * @param col the column of the move
+     * @param flipped the squares flipped, packed as
+     *                <tt>row*getNCols()+col</tt>
+     * @param count how many squares were flipped
+     */
+    public void deltaMade( int row, int col, int[] flipped, int count ) {
+        this.movesLeft -= 1;
+        this.board[ row ][ col ] = this.currentPiece;
+        this.hash ^= Zobrist.disc( row * this.cols + col,
+                                   this.currentPiece == Move.PLAYER_ONE ) ^
+                     Zobrist.SIDE;
+        updateFrontier( row, col );
+
+        for ( int i = 0; i < count; ++i ) {
+            int square = flipped[ i ];
+            this.board[ square / this.cols ][ square % this.cols ] =
+                    this.currentPiece;
+            this.hash ^= Zobrist.flip( square );
+        }
+
+        this.currentPiece = this.currentPiece.opponent();
+        this.myTurn = false;
+
+        super.setChanged();
+        super.notifyObservers();
+    }
+
+    /**
+     * Called when the server reports that the player whose turn it was
+     * has no legal move, so the other player goes again.
+     */
+    public void passMade() {
+        this.hash ^= Zobrist.SIDE;
+        this.currentPiece = this.currentPiece.opponent();
+        this.myTurn = false;
+
+        super.setChanged();
+        super.notifyObservers();
+    }
+
     /**
      * Called when the game has been won by this player.
      */
@@ -1,13 +1,15 @@
 package reversi2;
 
+import reversi.BinaryDecoder;
+import reversi.BinaryEncoder;
+import reversi.BinaryProtocol;
+import reversi.ProtocolReader;
 import reversi.ReversiException;
 import reversi.ReversiProtocol;
 
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.Socket;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 import static reversi.ReversiProtocol.*;
 
@@ -44,15 +46,33 @@ public class NetworkClient {
     private Socket sock;
 
     /**
-     * The {@link Scanner} used to read requests from the reversi server.
+     * The {@link ProtocolReader} used to read requests from the reversi
+     * server.
      */
-    private Scanner networkIn;
+    private ProtocolReader networkIn;
 
     /**
      * The {@link PrintStream} used to write responses to the reversi server.
      */
     private PrintStream networkOut;
 
+    /**
+     * The {@link BinaryEncoder} used to write responses to the reversi
+     * server, or null if the server speaks the text protocol.
+     */
+    private BinaryEncoder encoder;
+
+    /**
+     * The {@link BinaryDecoder} used to read requests from the reversi
+     * server, or null if the server speaks the text protocol.
+     */
+    private BinaryDecoder decoder;
+
+    /**
+     * Scratch space for the squares flipped by a board delta.
+     */
+    private int[] flipped;
+
     /**
      * The {@link Board} used to keep track of the state of the game.
      */
@@ -94,20 +114,65 @@ public class NetworkClient {
      */
     public NetworkClient( String hostname, int port, Board model )
             throws ReversiException {
+        this( hostname, port, model, null );
+    }
+
+    /**
+     * Hook up with a matchmaking Reversi game server. A
+     * {@link ReversiProtocol#JOIN} request with the player's rating and
+     * the board size wanted is sent first; the constructor then blocks
+     * until an opponent has been found and the server sends the
+     * {@link ReversiProtocol#CONNECT} message.
+     *
+     * @param hostname the name of the host running the server program
+     * @param port     the port of the server socket on which the server is
+     *                 listening
+     * @param model    the local object holding the state of the game that
+     *                 must be updated upon receiving server messages
+     * @param rating   the player's rating
+     * @param rows     number of rows wanted
+     * @param cols     number of columns wanted
+     * @throws ReversiException If there is a problem opening the connection
+     */
+    public NetworkClient( String hostname, int port, Board model,
+                          int rating, int rows, int cols )
+            throws ReversiException {
+        this( hostname, port, model,
+              JOIN + " " + rating + " " + rows + " " + cols );
+    }
+
+    /**
+     * Open the connection, send the join request if there is one, and
+     * wait for the CONNECT message.
+     *
+     * @param hostname the name of the host running the server program
+     * @param port     the port of the server socket
+     * @param model    the local object holding the state of the game
+     * @param join     the {@link ReversiProtocol#JOIN} request to send
+     *                 first, or null if the server does not do matchmaking
+     * @throws ReversiException If there is a problem opening the connection
+     */
+    private NetworkClient( String hostname, int port, Board model,
+                           String join )
+            throws ReversiException {
         try {
             this.sock = new Socket( hostname, port );
-            this.networkIn = new Scanner( sock.getInputStream() );
+            this.networkIn = new ProtocolReader( sock.getInputStream() );
             this.networkOut = new PrintStream( sock.getOutputStream() );
             this.game = model;
             this.go = true;
 
+            if ( join != null ) {
+                this.networkOut.println( join );
+            }
+
             // Block waiting for the CONNECT message from the server.
             String request = this.networkIn.next();
-            String arguments = this.networkIn.nextLine();
-            assert request.equals( ReversiProtocol.CONNECT ) :
-                    "CONNECT not 1st";
+            if ( request != ReversiProtocol.CONNECT ) {
+                throw new ReversiException( "CONNECT not 1st" );
+            }
             NetworkClient.dPrint( "Connected to server " + this.sock );
-            this.connect( arguments );
+            this.connect( this.networkIn.arguments() );
 
             // Run rest of client in separate thread.
             // This threads stops on its own at the end of the game and
@@ -124,10 +189,14 @@ public class NetworkClient {
     /**
      * Called by the constructor to set up the game board for this player now
      * that the server has sent the board dimensions with the
-     * {@link ReversiProtocol#CONNECT} request.
+     * {@link ReversiProtocol#CONNECT} request. If the server also offers
+     * the {@link BinaryProtocol binary protocol}, it is accepted, and all
+     * further messages are binary frames.
      *
      * @param arguments string from the server's message that
-     *                  contains the number of rows and columns in the board
+     *                  contains the number of rows and columns in the board,
+     *                  and possibly the server's protocol version and
+     *                  {@link ReversiProtocol#STRICT}
      * @throws ReversiException if the dimensions be small
      */
     public void connect( String arguments ) throws ReversiException {
@@ -136,8 +205,32 @@ public class NetworkClient {
         int rows = Integer.parseInt( fields[ 0 ] );
         int cols = Integer.parseInt( fields[ 1 ] );
 
+        // The rules, if strict, always come last.
+        int count = fields.length;
+        boolean strict = fields[ count - 1 ].equals( STRICT );
+        if ( strict ) {
+            --count;
+        }
+
         // Get the board state set up.
-        this.game.allocate( rows, cols ); // may throw exception
+        this.game.allocate( rows, cols, strict ); // may throw exception
+
+        if ( count > 2 &&
+             Integer.parseInt( fields[ 2 ] ) >= BinaryProtocol.BINARY_VERSION ) {
+            // take board deltas too, if the server has them
+            int version = Math.min( Integer.parseInt( fields[ 2 ] ),
+                                    BinaryProtocol.DELTA_VERSION );
+            this.flipped = new int[ rows * cols ];
+            try {
+                this.networkOut.println( BinaryProtocol.PROTOCOL + " " +
+                                         version );
+                this.encoder = new BinaryEncoder( this.sock.getOutputStream() );
+                this.decoder = new BinaryDecoder( this.sock.getInputStream() );
+            }
+            catch( IOException e ) {
+                throw new ReversiException( e );
+            }
+        }
     }
 
     /**
@@ -167,6 +260,64 @@ public class NetworkClient {
         this.game.moveMade( row, column );
     }
 
+    /**
+     * Run the main client loop for a server speaking the
+     * {@link BinaryProtocol binary protocol}. Each frame goes to the same
+     * handler as its text message would.
+     *
+     * @throws IOException if the connection fails or a frame is bad
+     */
+    private void runBinary() throws IOException {
+        while ( this.goodToGo() ) {
+            int op = this.decoder.next();
+            switch ( op ) {
+                case BinaryProtocol.OP_MAKE_MOVE:
+                    makeMove();
+                    break;
+                case BinaryProtocol.OP_MOVE_MADE:
+                    NetworkClient.dPrint( '!' + MOVE_MADE );
+                    this.game.moveMade( this.decoder.row(),
+                                        this.decoder.col() );
+                    break;
+                case BinaryProtocol.OP_BOARD_DELTA:
+                    NetworkClient.dPrint( '!' + MOVE_MADE );
+                    this.game.deltaMade( this.decoder.row(),
+                                         this.decoder.col(),
+                                         this.flipped,
+                                         this.decoder.flipped( this.flipped ) );
+                    break;
+                case BinaryProtocol.OP_PASS:
+                    passMade();
+                    break;
+                case BinaryProtocol.OP_GAME_WON:
+                    gameWon();
+                    break;
+                case BinaryProtocol.OP_GAME_LOST:
+                    gameLost();
+                    break;
+                case BinaryProtocol.OP_GAME_TIED:
+                    gameTied();
+                    break;
+                case BinaryProtocol.OP_ERROR:
+                    error( this.decoder.message() );
+                    break;
+                default:
+                    // -1: the connection shut down
+                    this.error( "Lost connection to server." );
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Called when the server sends a message saying that the player
+     * whose turn it was cannot move, so the other player goes again.
+     */
+    public void passMade() {
+        NetworkClient.dPrint( '!' + PASS );
+        this.game.passMade();
+    }
+
     /**
      * Called when the server sends a message saying that the
      * game has been won by this player. Ends the game.
@@ -232,7 +383,18 @@ public class NetworkClient {
      * UI wants to send a new move to the server.
      */
     public void sendMove( int row, int col ) {
-        this.networkOut.println( MOVE + " " + row + " " + col );
+        if ( this.encoder != null ) {
+            try {
+                this.encoder.move( row, col );
+                this.encoder.flush();
+            }
+            catch( IOException e ) {
+                // squash; the read loop will find the connection closed
+            }
+        }
+        else {
+            this.networkOut.println( MOVE + " " + row + " " + col );
+        }
     }
 
     /**
@@ -242,10 +404,29 @@ public class NetworkClient {
      */
     private void run() {
 
+        if ( this.decoder != null ) {
+            try {
+                runBinary();
+            }
+            catch( IOException | RuntimeException e ) {
+                // a malformed frame can fail in the decoder or the board,
+                // and must not end the thread without telling the UI
+                this.error( e.getMessage() + '?' );
+                this.stop();
+            }
+            this.close();
+            return;
+        }
+
         while ( this.goodToGo() ) {
             try {
                 String request = this.networkIn.next();
-                String arguments = this.networkIn.nextLine().trim();
+                if ( request == null ) {
+                    // Looks like the connection shut down.
+                    this.error( "Lost connection to server." );
+                    this.stop();
+                    break;
+                }
                 NetworkClient.dPrint( "Net message in = \"" + request + '"' );
 
                 switch ( request ) {
@@ -253,13 +434,21 @@ public class NetworkClient {
                         // This should not happen because NetworkClient
                         // waits for the CONNECT message in the constructor.
                         assert false : "CONNECT already happened?";
-                        connect( arguments );
+                        connect( this.networkIn.arguments() );
                         break;
                     case MAKE_MOVE:
                         makeMove();
                         break;
                     case MOVE_MADE:
-                        moveMade( arguments );
+                        if ( this.networkIn.argCount() != 2 ) {
+                            throw new ReversiException(
+                                    "Bad move: " + this.networkIn.line() );
+                        }
+                        this.game.moveMade( this.networkIn.arg( 0 ),
+                                            this.networkIn.arg( 1 ) );
+                        break;
+                    case PASS:
+                        passMade();
                         break;
                     case GAME_WON:
                         gameWon();
@@ -271,7 +460,7 @@ public class NetworkClient {
                         gameTied();
                         break;
                     case ERROR:
-                        error( arguments );
+                        error( this.networkIn.arguments() );
                         break;
                     default:
                         System.err
@@ -280,11 +469,6 @@ public class NetworkClient {
                         break;
                 }
             }
-            catch( NoSuchElementException nse ) {
-                // Looks like the connection shut down.
-                this.error( "Lost connection to server." );
-                this.stop();
-            }
             catch( Exception e ) {
                 this.error( e.getMessage() + '?' );
                 this.stop();